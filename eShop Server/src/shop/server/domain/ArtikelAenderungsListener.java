@@ -0,0 +1,23 @@
+package shop.server.domain;
+
+/**
+ * Schnittstelle fuer Objekte, die ueber Aenderungen am Artikelbestand
+ * benachrichtigt werden wollen.
+ * 
+ * @see ArtikelVerwaltung#fuegeListenerHinzu(ArtikelAenderungsListener)
+ */
+public interface ArtikelAenderungsListener {
+
+	/**
+	 * Wird nach jeder Aenderung an einem Artikel aufgerufen, in der Reihenfolge
+	 * der Versionen. Der Aufruf erfolgt im Thread, der die Aenderung vorgenommen
+	 * hat, und unter einer Sperre, die alle Aenderungen am Artikelbestand
+	 * durchlaufen; die Methode darf deshalb nicht blockieren und sollte die
+	 * Aenderung nur vormerken (z.B. in einer Warteschlange).
+	 * 
+	 * @param version neue Version des Artikelbestands
+	 * @param artikelnummer Nummer des hinzugefuegten, geaenderten oder entfernten Artikels
+	 */
+	public void artikelGeaendert(long version, int artikelnummer);
+
+}
@@ -1,10 +1,18 @@
 package shop.server.domain;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
 import shop.common.exceptions.ArtikelExistiertBereitsException;
@@ -20,11 +28,41 @@ import shop.server.persistence.data.ObjectDataPersistenceManager;
  */
 public class ArtikelVerwaltung {
 
-	// Verwaltung des Artikelbestands in einem Vector
-	private List<Artikel> artikelBestand = new Vector<Artikel>();
+	// Anzahl der letzten Aenderungen, die fuer getAenderungenSeit() aufbewahrt werden
+	private static final int AENDERUNGEN_KAPAZITAET = 10000;
+	// Anzahl der unteren Bits der Version, die Aenderungen zaehlen; die oberen
+	// Bits enthalten die Epoche des Server-Starts
+	private static final int ZAEHLER_BITS = 40;
+	
+	// Verwaltung des Artikelbestands sortiert nach Artikelnummer
+	private ConcurrentNavigableMap<Integer, Artikel> artikelBestand = new ConcurrentSkipListMap<Integer, Artikel>();
+	// derselbe Bestand sortiert nach Bezeichnung (bei gleicher Bezeichnung nach Artikelnummer)
+	private ConcurrentNavigableMap<BezeichnungsSchluessel, Artikel> artikelNachBezeichnung = new ConcurrentSkipListMap<BezeichnungsSchluessel, Artikel>();
+	// derselbe Bestand sortiert nach Preis (bei gleichem Preis nach Artikelnummer)
+	private ConcurrentNavigableMap<PreisSchluessel, Artikel> artikelNachPreis = new ConcurrentSkipListMap<PreisSchluessel, Artikel>();
+	// Index auf den Artikelbestand nach Artikelnummer, wird bei jeder Aenderung mitgefuehrt
+	private IntHashMap<Artikel> artikelNachNummer = new IntHashMap<Artikel>();
+	// Volltext-Index auf die Bezeichnungen fuer sucheArtikel(String)
+	private TrigrammIndex bezeichnungsIndex = new TrigrammIndex();
+	// Bestaende der Artikel, werden ohne Sperre der ArtikelVerwaltung veraendert
+	private Lagerbestand lager = new Lagerbestand();
 	// Persistenz-Schnittstelle, die fuer die Details des Dateizugriffs verantwortlich ist
 	private DataPersistenceManager pm = new ObjectDataPersistenceManager();
 	
+	// Version des Artikelbestands, wird nach jeder Aenderung erhoeht. Sie beginnt
+	// bei einer bei jedem Start neu gewuerfelten Epoche, so dass eine Version aus
+	// einem frueheren Lauf des Servers nie als bekannt gilt
+	private AtomicLong version = new AtomicLong((long) (1 + new Random().nextInt((1 << 22) - 1)) << ZAEHLER_BITS);
+	// zuletzt erzeugter Snapshot des Artikelbestands (siehe getSnapshot())
+	private volatile KatalogSnapshot snapshot = null;
+	private Object snapshotSperre = new Object();
+	// Ringpuffer der letzten Aenderungen: die Aenderung zur Version v steht an
+	// der Stelle v % AENDERUNGEN_KAPAZITAET
+	private int[] geaenderteArtikel = new int[AENDERUNGEN_KAPAZITAET];
+	private Object aenderungsSperre = new Object();
+	// werden nach jeder Aenderung benachrichtigt
+	private List<ArtikelAenderungsListener> listener = new CopyOnWriteArrayList<ArtikelAenderungsListener>();
+	
 	/**
 	 * Methode zum Einlesen von Artikeldaten aus einer Datei.
 	 * 
@@ -67,7 +105,7 @@ public class ArtikelVerwaltung {
 		pm.openForWriting(datei);
 
 		if (!artikelBestand.isEmpty()) {
-			Iterator<Artikel> iter = artikelBestand.iterator();
+			Iterator<Artikel> iter = artikelBestand.values().iterator();
 			while (iter.hasNext()) {
 				pm.speichereArtikel(iter.next());				
 			}
@@ -83,11 +121,18 @@ public class ArtikelVerwaltung {
 	 * @param artikel
 	 * @throws ArtikelExistiertBereitsException
 	 */
-	public void einfuegen(Artikel artikel) throws ArtikelExistiertBereitsException {
-		if (!artikelBestand.contains(artikel))
-			artikelBestand.add(artikel);
-		else
+	public synchronized void einfuegen(Artikel artikel) throws ArtikelExistiertBereitsException {
+		if (!artikelNachNummer.containsKey(artikel.getArtikelnummer())) {
+			// der Zaehler muss bestehen, bevor der Artikel gefunden werden kann
+			lager.aufnehmen(artikel);
+			artikelBestand.put(artikel.getArtikelnummer(), artikel);
+			artikelNachBezeichnung.put(new BezeichnungsSchluessel(artikel), artikel);
+			artikelNachPreis.put(new PreisSchluessel(artikel), artikel);
+			artikelNachNummer.put(artikel.getArtikelnummer(), artikel);
+			bezeichnungsIndex.hinzufuegen(artikel.getArtikelnummer(), artikel.getBezeichnung());
+		} else
 			throw new ArtikelExistiertBereitsException(artikel, " - in 'einfuegen()'");
+		aenderungVermerken(artikel.getArtikelnummer());
 	}
 	
 	/**
@@ -98,18 +143,12 @@ public class ArtikelVerwaltung {
 	 * @throws ArtikelExistiertNichtException
 	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException
 	 */
-	public synchronized void bestandVeraendern(int artikelnummer, int anzahl) throws ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
-		int index = -1;
-
-		Iterator<Artikel> iter = artikelBestand.iterator();
-		while (iter.hasNext()) {
-			Artikel artikel = iter.next();
-			if (artikel.getArtikelnummer() == artikelnummer)
-				index = artikelBestand.indexOf(artikel);
-		}
+	public void bestandVeraendern(int artikelnummer, int anzahl) throws ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		Artikel artikel = artikelNachNummer.get(artikelnummer);
 		
-		if (index != -1) {
-			artikelBestand.get(index).setBestand(artikelBestand.get(index).getBestand() + anzahl);
+		if (artikel != null) {
+			lager.veraendern(artikel, anzahl);
+			aenderungVermerken(artikelnummer);
 		} else 
 			throw new ArtikelExistiertNichtException(artikelnummer, " - in 'bestandErhoehen()'");
 	}
@@ -122,13 +161,9 @@ public class ArtikelVerwaltung {
 	 * @throws ArtikelExistiertNichtException
 	 */
 	public Artikel getArtikel(int artikelnummer) throws ArtikelExistiertNichtException {
-		Iterator<Artikel> iter = artikelBestand.iterator();
-		while (iter.hasNext()) {
-			Artikel artikel = iter.next();
-			if (artikel.getArtikelnummer() == artikelnummer) {
-				return artikel;
-			}
-		}
+		Artikel artikel = artikelNachNummer.get(artikelnummer);
+		if (artikel != null)
+			return artikel;
 		throw new ArtikelExistiertNichtException(artikelnummer, " - in 'getArtikel()'");
 	}
 	
@@ -142,15 +177,11 @@ public class ArtikelVerwaltung {
 	public List<Artikel> sucheArtikel(int artikelnummer) {
 		List<Artikel> ergebnis = new Vector<Artikel>();
 		
-		Iterator<Artikel> iter = artikelBestand.iterator();
-		while (iter.hasNext()) {
-			Artikel artikel = iter.next();
-			if (artikel.getArtikelnummer() == artikelnummer) {
-				ergebnis.add(artikel);
-			}
-		}
+		// Artikelnummern sind eindeutig, das Ergebnis enthaelt hoechstens einen Artikel
+		Artikel artikel = artikelNachNummer.get(artikelnummer);
+		if (artikel != null)
+			ergebnis.add(artikel);
 		
-		Collections.sort(ergebnis, new SortierungNachArtikelnummer());
 		return ergebnis;
 	}
 	
@@ -163,12 +194,24 @@ public class ArtikelVerwaltung {
 	 */
 	public List<Artikel> sucheArtikel(String bezeichnung) {
 		List<Artikel> ergebnis = new Vector<Artikel>();
+		String gesucht = bezeichnung.toLowerCase();
 		
-		Iterator<Artikel> iter = artikelBestand.iterator();
-		while (iter.hasNext()) {
-			Artikel artikel = iter.next();
-			if (artikel.getBezeichnung().toLowerCase().contains(bezeichnung.toLowerCase())) {
-				ergebnis.add(artikel);
+		if (gesucht.length() < TrigrammIndex.MIN_LAENGE) {
+			// zu kurz fuer den Index, der ganze Bestand wird durchsucht
+			Iterator<Artikel> iter = artikelBestand.values().iterator();
+			while (iter.hasNext()) {
+				Artikel artikel = iter.next();
+				if (artikel.getBezeichnung().toLowerCase().contains(gesucht)) {
+					ergebnis.add(artikel);
+				}
+			}
+		} else {
+			// der Index liefert nur Kandidaten, die noch geprueft werden muessen
+			for (int artikelnummer : bezeichnungsIndex.kandidaten(gesucht)) {
+				Artikel artikel = artikelNachNummer.get(artikelnummer);
+				if (artikel != null && artikel.getBezeichnung().toLowerCase().contains(gesucht)) {
+					ergebnis.add(artikel);
+				}
 			}
 		}
 		
@@ -183,18 +226,16 @@ public class ArtikelVerwaltung {
 	 * @throws ArtikelExistiertNichtException
 	 */
 	public synchronized void entfernen(int artikelnummer) throws ArtikelExistiertNichtException {
-		int index = -1;
-
-		Iterator<Artikel> iter = artikelBestand.iterator();
-		while (iter.hasNext()) {
-			Artikel artikel = iter.next();
-			if (artikel.getArtikelnummer() == artikelnummer)
-				index = artikelBestand.indexOf(artikel);
-		}
+		Artikel artikel = artikelNachNummer.remove(artikelnummer);
 		
-		if (index != -1)
-			artikelBestand.remove(index);
-		else
+		if (artikel != null) {
+			artikelBestand.remove(artikelnummer);
+			artikelNachBezeichnung.remove(new BezeichnungsSchluessel(artikel));
+			artikelNachPreis.remove(new PreisSchluessel(artikel));
+			bezeichnungsIndex.entfernen(artikelnummer, artikel.getBezeichnung());
+			lager.entfernen(artikelnummer);
+			aenderungVermerken(artikelnummer);
+		} else
 			throw new ArtikelExistiertNichtException(artikelnummer, " - in 'entfernen()'");
 	}
 	
@@ -205,7 +246,7 @@ public class ArtikelVerwaltung {
 	 */
 	public List<Artikel> getArtikelBestand() {
 		List<Artikel> ergebnis = new Vector<Artikel>();
-		ergebnis.addAll(artikelBestand);
+		ergebnis.addAll(artikelBestand.values());
 		return ergebnis;
 	}
 	
@@ -216,8 +257,7 @@ public class ArtikelVerwaltung {
 	 */
 	public List<Artikel> getArtikelBestandSortiertNachArtikelnummer() {
 		List<Artikel> ergebnis = new Vector<Artikel>();
-		ergebnis.addAll(artikelBestand);
-		Collections.sort(ergebnis, new SortierungNachArtikelnummer());
+		ergebnis.addAll(artikelBestand.values());
 		return ergebnis;
 	}
 	
@@ -228,11 +268,212 @@ public class ArtikelVerwaltung {
 	 */
 	public List<Artikel> getArtikelBestandSortiertNachBezeichnung() {
 		List<Artikel> ergebnis = new Vector<Artikel>();
-		ergebnis.addAll(artikelBestand);
-		Collections.sort(ergebnis, new SortierungNachBezeichnung());
+		ergebnis.addAll(artikelNachBezeichnung.values());
 		return ergebnis;
 	}
 	
+	/**
+	 * Methode die eine Seite des Artikelbestands zurueck gibt, sortiert nach
+	 * Artikelnummer oder nach Bezeichnung. Die vorangehenden Artikel muessen
+	 * dafuer abgelaufen werden, bei grossen Bestaenden ist das Blaettern ueber
+	 * getArtikelNachArtikelnummer() bzw. getArtikelNachBezeichnung() guenstiger.
+	 * 
+	 * @param nachBezeichnung true fuer die Sortierung nach Bezeichnung
+	 * @param offset Anzahl der zu ueberspringenden Artikel
+	 * @param limit maximale Anzahl Artikel
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> getArtikelSeite(boolean nachBezeichnung, int offset, int limit) {
+		if (nachBezeichnung)
+			return seite(artikelNachBezeichnung.values(), offset, limit);
+		return seite(artikelBestand.values(), offset, limit);
+	}
+	
+	/**
+	 * Methode die die naechsten Artikel nach einer Artikelnummer zurueck gibt
+	 * (Blaettern mit Cursor). Fuer die erste Seite kann eine beliebige Nummer
+	 * kleiner als alle Artikelnummern uebergeben werden, fuer die folgenden die
+	 * Nummer des letzten Artikels der vorigen Seite.
+	 * 
+	 * @param nachArtikelnummer Artikelnummer, nach der die Seite beginnt
+	 * @param limit maximale Anzahl Artikel
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> getArtikelNachArtikelnummer(int nachArtikelnummer, int limit) {
+		return seite(artikelBestand.tailMap(nachArtikelnummer, false).values(), 0, limit);
+	}
+	
+	/**
+	 * Methode die die naechsten Artikel in der Sortierung nach Bezeichnung
+	 * zurueck gibt (Blaettern mit Cursor). Fuer die folgenden Seiten werden
+	 * Bezeichnung und Artikelnummer des letzten Artikels der vorigen Seite
+	 * uebergeben, fuer die erste Seite eine leere Bezeichnung.
+	 * 
+	 * @param nachBezeichnung Bezeichnung, nach der die Seite beginnt
+	 * @param nachArtikelnummer Artikelnummer, nach der die Seite bei gleicher Bezeichnung beginnt
+	 * @param limit maximale Anzahl Artikel
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> getArtikelNachBezeichnung(String nachBezeichnung, int nachArtikelnummer, int limit) {
+		BezeichnungsSchluessel cursor = new BezeichnungsSchluessel(nachBezeichnung, nachArtikelnummer);
+		return seite(artikelNachBezeichnung.tailMap(cursor, false).values(), 0, limit);
+	}
+	
+	/**
+	 * Methode die die Artikel mit einer Artikelnummer zwischen von und bis
+	 * (jeweils einschliesslich) sortiert nach Artikelnummer zurueck gibt.
+	 * 
+	 * @param von
+	 * @param bis
+	 * @param limit maximale Anzahl Artikel
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> getArtikelImNummernbereich(int von, int bis, int limit) {
+		if (von > bis)
+			return new Vector<Artikel>();
+		return seite(artikelBestand.subMap(von, true, bis, true).values(), 0, limit);
+	}
+	
+	/**
+	 * Methode die die Artikel mit einem Preis zwischen von und bis (jeweils
+	 * einschliesslich) sortiert nach Preis zurueck gibt.
+	 * 
+	 * @param von
+	 * @param bis
+	 * @param limit maximale Anzahl Artikel
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> getArtikelImPreisbereich(double von, double bis, int limit) {
+		PreisSchluessel anfang = new PreisSchluessel(von, Integer.MIN_VALUE);
+		PreisSchluessel ende = new PreisSchluessel(bis, Integer.MAX_VALUE);
+		if (anfang.compareTo(ende) > 0)
+			return new Vector<Artikel>();
+		return seite(artikelNachPreis.subMap(anfang, true, ende, true).values(), 0, limit);
+	}
+	
+	private static List<Artikel> seite(Collection<Artikel> artikel, int offset, int limit) {
+		List<Artikel> ergebnis = new Vector<Artikel>();
+		Iterator<Artikel> iter = artikel.iterator();
+		for (int i = 0; i < offset && iter.hasNext(); i++) {
+			iter.next();
+		}
+		while (ergebnis.size() < limit && iter.hasNext()) {
+			ergebnis.add(iter.next());
+		}
+		return ergebnis;
+	}
+	
+	/**
+	 * Methode die die Bestaende der Artikel zurueck gibt, damit der Warenkorb
+	 * sie veraendern kann.
+	 * 
+	 * @return Lagerbestand
+	 */
+	Lagerbestand getLagerbestand() {
+		return lager;
+	}
+	
+	/**
+	 * Methode die den aktuellen Snapshot des Artikelbestands zurueck gibt. Der
+	 * Snapshot wird nur neu aufgebaut, wenn sich der Bestand seit dem letzten
+	 * Aufruf geaendert hat.
+	 * 
+	 * @return KatalogSnapshot
+	 */
+	public KatalogSnapshot getSnapshot() {
+		KatalogSnapshot s = snapshot;
+		if (s != null && s.getVersion() == version.get())
+			return s;
+		
+		synchronized (snapshotSperre) {
+			// Die Version wird vor dem Kopieren gelesen: der Snapshot enthaelt damit
+			// mindestens alle Aenderungen bis zu dieser Version
+			long aktuelleVersion = version.get();
+			s = snapshot;
+			if (s != null && s.getVersion() == aktuelleVersion)
+				return s;
+			
+			// Die Sortierungen werden nur abgelaufen, unter der Sperre des Bestands
+			// passen beide Listen garantiert zueinander
+			List<Artikel> nachArtikelnummer;
+			List<Artikel> nachBezeichnung;
+			synchronized (this) {
+				nachArtikelnummer = new Vector<Artikel>(artikelBestand.values());
+				nachBezeichnung = new Vector<Artikel>(artikelNachBezeichnung.values());
+			}
+			
+			s = new KatalogSnapshot(aktuelleVersion, nachArtikelnummer, nachBezeichnung);
+			snapshot = s;
+			return s;
+		}
+	}
+	
+	/**
+	 * Methode die die aktuelle Version des Artikelbestands zurueck gibt.
+	 * 
+	 * @return Version
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+	
+	/**
+	 * Methode die vermerkt, dass sich ein Artikel geaendert hat. Die Version des
+	 * Artikelbestands wird erhoeht, womit der Snapshot ungueltig wird, und die
+	 * Artikelnummer wird fuer getAenderungenSeit() aufbewahrt. Muss nach jeder 
+	 * Aenderung an einem Artikel aufgerufen werden, auch wenn diese ausserhalb
+	 * der ArtikelVerwaltung vorgenommen wurde (z.B. Bestandsaenderungen durch
+	 * den Warenkorb).
+	 * 
+	 * @param artikelnummer Nummer des hinzugefuegten, geaenderten oder entfernten Artikels
+	 */
+	public void aenderungVermerken(int artikelnummer) {
+		synchronized (aenderungsSperre) {
+			long neueVersion = version.incrementAndGet();
+			geaenderteArtikel[(int) (neueVersion % AENDERUNGEN_KAPAZITAET)] = artikelnummer;
+			// innerhalb der Sperre, damit die Listener die Versionen in der richtigen
+			// Reihenfolge erhalten; die Listener stellen die Aenderung nur in eine
+			// Warteschlange, damit die Sperre kurz bleibt
+			for (ArtikelAenderungsListener l : listener) {
+				l.artikelGeaendert(neueVersion, artikelnummer);
+			}
+		}
+	}
+	
+	/**
+	 * Methode zum Anmelden eines Listeners, der nach jeder Aenderung am 
+	 * Artikelbestand benachrichtigt wird.
+	 * 
+	 * @param l
+	 */
+	public void fuegeListenerHinzu(ArtikelAenderungsListener l) {
+		listener.add(l);
+	}
+	
+	/**
+	 * Methode die zurueck gibt, welche Artikel sich seit einer Version des
+	 * Artikelbestands geaendert haben. Liegt die Version zu weit zurueck (oder
+	 * stammt sie nicht von diesem Lauf des Servers), ist das Ergebnis nicht
+	 * vollstaendig und der Aufrufer muss den ganzen Bestand neu laden.
+	 * 
+	 * @param seitVersion Version, die der Aufrufer bereits kennt
+	 * @return KatalogAenderungen
+	 */
+	public KatalogAenderungen getAenderungenSeit(long seitVersion) {
+		synchronized (aenderungsSperre) {
+			long aktuelleVersion = version.get();
+			if (seitVersion >>> ZAEHLER_BITS != aktuelleVersion >>> ZAEHLER_BITS
+					|| seitVersion > aktuelleVersion || aktuelleVersion - seitVersion > AENDERUNGEN_KAPAZITAET)
+				return new KatalogAenderungen(aktuelleVersion, null);
+			
+			Set<Integer> artikelnummern = new TreeSet<Integer>();
+			for (long v = seitVersion + 1; v <= aktuelleVersion; v++) {
+				artikelnummern.add(geaenderteArtikel[(int) (v % AENDERUNGEN_KAPAZITAET)]);
+			}
+			return new KatalogAenderungen(aktuelleVersion, artikelnummern);
+		}
+	}
+	
 	/**
 	 * Methode zum bearbeiten eines Artikels.
 	 * 
@@ -243,8 +484,80 @@ public class ArtikelVerwaltung {
 	 */
 	public synchronized void bearbeiten(int artikelnummer, double preis, String bezeichnung) throws ArtikelExistiertNichtException{
 		Artikel artikel = getArtikel(artikelnummer);
+		bezeichnungsIndex.entfernen(artikelnummer, artikel.getBezeichnung());
+		// Erst unter dem neuen Schluessel einfuegen, dann den alten entfernen: eine
+		// gleichzeitige Auflistung sieht den Artikel so hoechstens doppelt, aber nie gar nicht
+		PreisSchluessel alterPreis = new PreisSchluessel(artikel);
+		BezeichnungsSchluessel alterSchluessel = new BezeichnungsSchluessel(artikel);
 		artikel.setPreis(preis);
 		artikel.setBezeichnung(bezeichnung);
+		PreisSchluessel neuerPreis = new PreisSchluessel(artikel);
+		if (neuerPreis.compareTo(alterPreis) != 0) {
+			artikelNachPreis.put(neuerPreis, artikel);
+			artikelNachPreis.remove(alterPreis);
+		}
+		BezeichnungsSchluessel neuerSchluessel = new BezeichnungsSchluessel(artikel);
+		// Bei unveraenderter Bezeichnung sind beide Schluessel gleich, das Entfernen wuerde den Artikel verlieren
+		if (neuerSchluessel.compareTo(alterSchluessel) != 0) {
+			artikelNachBezeichnung.put(neuerSchluessel, artikel);
+			artikelNachBezeichnung.remove(alterSchluessel);
+		}
+		bezeichnungsIndex.hinzufuegen(artikelnummer, bezeichnung);
+		aenderungVermerken(artikelnummer);
+	}
+	
+	/**
+	 * Schluessel fuer die Sortierung nach Bezeichnung. Die Artikelnummer macht
+	 * den Schluessel eindeutig, wenn mehrere Artikel gleich heissen. Da sich die
+	 * Bezeichnung eines Artikels aendern kann, wird sie beim Erzeugen kopiert.
+	 */
+	private static class BezeichnungsSchluessel implements Comparable<BezeichnungsSchluessel> {
+		
+		private final String bezeichnung;
+		private final int artikelnummer;
+		
+		BezeichnungsSchluessel(Artikel artikel) {
+			this(artikel.getBezeichnung(), artikel.getArtikelnummer());
+		}
+		
+		BezeichnungsSchluessel(String bezeichnung, int artikelnummer) {
+			this.bezeichnung = bezeichnung;
+			this.artikelnummer = artikelnummer;
+		}
+		
+		public int compareTo(BezeichnungsSchluessel andere) {
+			int vergleich = bezeichnung.compareTo(andere.bezeichnung);
+			if (vergleich != 0)
+				return vergleich;
+			return artikelnummer < andere.artikelnummer ? -1 : (artikelnummer == andere.artikelnummer ? 0 : 1);
+		}
+		
+	}
+	
+	/**
+	 * Schluessel fuer die Sortierung nach Preis, analog zu BezeichnungsSchluessel.
+	 */
+	private static class PreisSchluessel implements Comparable<PreisSchluessel> {
+		
+		private final double preis;
+		private final int artikelnummer;
+		
+		PreisSchluessel(Artikel artikel) {
+			this(artikel.getPreis(), artikel.getArtikelnummer());
+		}
+		
+		PreisSchluessel(double preis, int artikelnummer) {
+			this.preis = preis;
+			this.artikelnummer = artikelnummer;
+		}
+		
+		public int compareTo(PreisSchluessel andere) {
+			int vergleich = Double.compare(preis, andere.preis);
+			if (vergleich != 0)
+				return vergleich;
+			return artikelnummer < andere.artikelnummer ? -1 : (artikelnummer == andere.artikelnummer ? 0 : 1);
+		}
+		
 	}
 	
-}
+}
\ No newline at end of file
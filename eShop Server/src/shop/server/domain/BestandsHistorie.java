@@ -0,0 +1,124 @@
+package shop.server.domain;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Bestandsveraenderungen der letzten Tage je Artikel.
+ *
+ * Fuer jeden Artikel wird ein Ring mit der Summe der Ein- und Auslagerungen je
+ * Tag gefuehrt, fuer heute und die TAGE - 1 vorherigen Tage. Jedes Ereignis
+ * wird beim Entstehen gebucht. Der Ring wird beim naechsten Zugriff nach
+ * Mitternacht weitergedreht, die Faecher der vergangenen Tage werden dabei
+ * geleert. Der Bestand am Ende jedes Tages ergibt sich, indem vom aktuellen
+ * Bestand aus zurueck gerechnet wird.
+ */
+class BestandsHistorie {
+
+	// Anzahl Tage der Bestandshistorie
+	static final int TAGE = 30;
+
+	private static final long MILLIS_PRO_TAG = 1000L * 60 * 60 * 24;
+
+	private static final class Verlauf {
+		// Bestandsveraenderung je Tag, Fach = Tagnummer % TAGE
+		final int[] aenderungen = new int[TAGE];
+		// Tag, bis zu dem der Ring weitergedreht ist
+		long letzterTag;
+
+		Verlauf(long heute) {
+			letzterTag = heute;
+		}
+	}
+
+	private IntHashMap<Verlauf> verlaeufe = new IntHashMap<Verlauf>();
+
+	/**
+	 * Bucht eine Bestandsveraenderung. Veraenderungen, die aelter als die
+	 * Historie sind, werden ignoriert.
+	 *
+	 * @param artikelnummer
+	 * @param anzahl positiv fuer Einlagerungen, negativ fuer Auslagerungen
+	 * @param tag Tagnummer der Veraenderung (siehe tagNummer())
+	 */
+	void buchen(int artikelnummer, int anzahl, long tag) {
+		long heute = tagNummer(System.currentTimeMillis());
+		if (tag > heute)
+			tag = heute;
+		if (tag <= heute - TAGE || anzahl == 0)
+			return;
+		Verlauf v = gibVerlauf(artikelnummer, heute);
+		synchronized (v) {
+			rollen(v, heute);
+			v.aenderungen[(int) (tag % TAGE)] += anzahl;
+		}
+	}
+
+	/**
+	 * Verwirft die Historie eines entfernten Artikels.
+	 *
+	 * @param artikelnummer
+	 */
+	void entfernen(int artikelnummer) {
+		verlaeufe.remove(artikelnummer);
+	}
+
+	/**
+	 * Gibt den Bestand am Ende jedes der letzten TAGE Tage zurueck, den
+	 * aeltesten Tag zuerst. Der heutige Tag ist nicht enthalten.
+	 *
+	 * @param artikelnummer
+	 * @param bestand aktueller Bestand des Artikels
+	 * @return Bestaende, Laenge TAGE
+	 */
+	int[] gibBestaende(int artikelnummer, int bestand) {
+		long heute = tagNummer(System.currentTimeMillis());
+		int[] aenderungen = new int[TAGE];
+		Verlauf v = verlaeufe.get(artikelnummer);
+		if (v != null) {
+			synchronized (v) {
+				rollen(v, heute);
+				System.arraycopy(v.aenderungen, 0, aenderungen, 0, TAGE);
+			}
+		}
+
+		int[] bestaende = new int[TAGE];
+		for (int i = TAGE - 1; i >= 0; i--) {
+			// vom Ende des Tages i+1 auf das Ende des Tages i zurueck rechnen
+			bestand -= aenderungen[(int) ((heute - (TAGE - 1 - i)) % TAGE)];
+			bestaende[i] = bestand;
+		}
+		return bestaende;
+	}
+
+	/**
+	 * @param zeit Zeitpunkt in Millisekunden
+	 * @return Nummer des Tages in der lokalen Zeitzone
+	 */
+	static long tagNummer(long zeit) {
+		return (zeit + TimeZone.getDefault().getOffset(zeit)) / MILLIS_PRO_TAG;
+	}
+
+	private synchronized Verlauf gibVerlauf(int artikelnummer, long heute) {
+		Verlauf v = verlaeufe.get(artikelnummer);
+		if (v == null) {
+			v = new Verlauf(heute);
+			verlaeufe.put(artikelnummer, v);
+		}
+		return v;
+	}
+
+	// leert die Faecher der Tage seit dem letzten Weiterdrehen
+	private static void rollen(Verlauf v, long heute) {
+		if (heute <= v.letzterTag)
+			return;
+		if (heute - v.letzterTag >= TAGE) {
+			Arrays.fill(v.aenderungen, 0);
+		} else {
+			for (long tag = v.letzterTag + 1; tag <= heute; tag++)
+				v.aenderungen[(int) (tag % TAGE)] = 0;
+		}
+		v.letzterTag = heute;
+	}
+
+}
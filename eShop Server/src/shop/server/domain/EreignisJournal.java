@@ -0,0 +1,277 @@
+package shop.server.domain;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import shop.common.valueobjects.Ereignis;
+import shop.common.valueobjects.Mitarbeiter;
+import shop.server.persistence.log.FileLogPersistenceManager;
+import shop.server.persistence.log.LogPersistenceManager;
+
+/**
+ * Journal, das jedes Ereignis genau einmal an die Logdatei anhaengt. Ebenso werden
+ * die Grabsteine entfernter Artikel geschrieben.
+ *
+ * Die Ereignisse werden in eine Warteschlange gestellt und von einem eigenen
+ * Thread geschrieben. Alle Ereignisse, die waehrend eines Schreibvorgangs
+ * eintreffen, werden im naechsten gemeinsam geschrieben (group commit). Auf das
+ * Speichermedium synchronisiert (fsync) wird erst nach einer einstellbaren
+ * Anzahl Ereignisse oder Zeit, oder wenn ein Aufrufer mit abwarten(true)
+ * darauf wartet.
+ */
+class EreignisJournal implements Runnable {
+
+	// Anzahl geschriebener Ereignisse, nach der spaetestens synchronisiert wird
+	static final int SYNCHRONISIEREN_NACH = 64;
+	// Zeit in Millisekunden, nach der geschriebene Ereignisse spaetestens synchronisiert werden
+	static final long SYNCHRONISIEREN_SPAETESTENS = 1000L;
+
+	private String dateiname;
+	private LogPersistenceManager lpm = new FileLogPersistenceManager();
+	private int synchronisierenNach;
+	private long synchronisierenSpaetestens;
+
+	// Eintrag der Warteschlange, der sich selbst in die Logdatei schreibt
+	private interface Eintrag {
+		void schreiben(LogPersistenceManager lpm) throws IOException;
+	}
+
+	// Alle folgenden Felder nur unter der Sperre des Journals
+	private List<Eintrag> warteschlange = new ArrayList<Eintrag>();
+	// Anzahl eingereichter, geschriebener und synchronisierter Ereignisse
+	private long eingereicht = 0;
+	private long geschrieben = 0;
+	private long synchronisiert = 0;
+	private long letzteSynchronisierung = System.currentTimeMillis();
+	private boolean synchronisierenAngefordert = false;
+	private boolean schreibtGerade = false;
+	private boolean angehalten = false;
+	// false, wenn das Wiederoeffnen der Logdatei in fortsetzen() fehlschlug;
+	// der Thread des Journals versucht es dann vor dem naechsten Schreiben erneut
+	private boolean geoeffnet = true;
+	private IOException fehler = null;
+
+	/**
+	 * Konstruktor mit den voreingestellten Grenzen fuer die Synchronisierung.
+	 *
+	 * @param dateiname Name der Logdatei
+	 * @throws IOException
+	 */
+	EreignisJournal(String dateiname) throws IOException {
+		this(dateiname, SYNCHRONISIEREN_NACH, SYNCHRONISIEREN_SPAETESTENS);
+	}
+
+	/**
+	 * Konstruktor des Journals. Die Logdatei wird zum Anhaengen geoeffnet und
+	 * der Thread des Journals gestartet.
+	 *
+	 * @param dateiname Name der Logdatei
+	 * @param synchronisierenNach Anzahl Ereignisse, nach der synchronisiert wird (1 = nach jedem Schreiben)
+	 * @param synchronisierenSpaetestens Zeit in Millisekunden, nach der synchronisiert wird
+	 * @throws IOException
+	 */
+	EreignisJournal(String dateiname, int synchronisierenNach, long synchronisierenSpaetestens) throws IOException {
+		this.dateiname = dateiname;
+		this.synchronisierenNach = Math.max(1, synchronisierenNach);
+		this.synchronisierenSpaetestens = synchronisierenSpaetestens;
+		lpm.openForWriting(dateiname);
+
+		Thread thread = new Thread(this, "EreignisJournal");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stellt ein Ereignis zum Schreiben in die Warteschlange.
+	 *
+	 * @param e
+	 */
+	void anhaengen(final Ereignis e) {
+		einreichen(new Eintrag() {
+			public void schreiben(LogPersistenceManager lpm) throws IOException {
+				if (e.getAnzahl() < 0) {
+					lpm.speichereAuslagerung(e.getPerson(), Math.abs(e.getAnzahl()), e.getArtikel().getArtikelnummer(), e.getDatum());
+				} else if (e.getAnzahl() > 0) {
+					lpm.speichereEinlagerung((Mitarbeiter) e.getPerson(), e.getAnzahl(), e.getArtikel().getArtikelnummer(), e.getDatum());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stellt den Grabstein eines entfernten Artikels zum Schreiben in die Warteschlange.
+	 *
+	 * @param m Mitarbeiter, der den Artikel entfernt hat
+	 * @param artikelnummer
+	 * @param datum
+	 */
+	void entfernungAnhaengen(final Mitarbeiter m, final int artikelnummer, final Date datum) {
+		einreichen(new Eintrag() {
+			public void schreiben(LogPersistenceManager lpm) throws IOException {
+				lpm.speichereEntfernung(m, artikelnummer, datum);
+			}
+		});
+	}
+
+	private synchronized void einreichen(Eintrag e) {
+		warteschlange.add(e);
+		eingereicht++;
+		notifyAll();
+	}
+
+	/**
+	 * Wartet, bis alle bisher eingereichten Ereignisse in der Logdatei stehen.
+	 *
+	 * @param synchronisieren true, wenn sie auch auf das Speichermedium synchronisiert sein muessen
+	 * @throws IOException wenn beim Schreiben seit dem letzten Aufruf ein Fehler auftrat
+	 */
+	synchronized void abwarten(boolean synchronisieren) throws IOException {
+		long ziel = eingereicht;
+		if (synchronisieren && synchronisiert < ziel) {
+			synchronisierenAngefordert = true;
+			notifyAll();
+		}
+		try {
+			while ((synchronisieren ? synchronisiert : geschrieben) < ziel)
+				wait();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Warten auf das Journal unterbrochen");
+		}
+		if (fehler != null) {
+			IOException f = fehler;
+			fehler = null;
+			throw f;
+		}
+	}
+
+	/**
+	 * Schreibt und synchronisiert alle eingereichten Ereignisse und schliesst
+	 * die Logdatei, damit sie von aussen veraendert werden kann. Neue Ereignisse
+	 * werden bis zum Aufruf von fortsetzen() nur in die Warteschlange gestellt.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void anhalten() throws IOException {
+		abwarten(true);
+		try {
+			while (schreibtGerade)
+				wait();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Warten auf das Journal unterbrochen");
+		}
+		angehalten = true;
+		lpm.close();
+	}
+
+	/**
+	 * Oeffnet die Logdatei wieder und setzt das Schreiben fort. Auch wenn das
+	 * Oeffnen fehlschlaegt, ist das Journal danach nicht mehr angehalten, sonst
+	 * warteten alle Aufrufer von abwarten() fuer immer. Der Thread des Journals
+	 * versucht dann vor dem naechsten Schreiben erneut, die Logdatei zu oeffnen,
+	 * und meldet einen Fehler ueber abwarten().
+	 *
+	 * @throws IOException wenn die Logdatei nicht geoeffnet werden konnte
+	 */
+	synchronized void fortsetzen() throws IOException {
+		try {
+			lpm.openForWriting(dateiname);
+			geoeffnet = true;
+		} catch (IOException e) {
+			geoeffnet = false;
+			throw e;
+		} finally {
+			angehalten = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Schreibt die Ereignisse der Warteschlange, solange der Server laeuft.
+	 */
+	public void run() {
+		while (true) {
+			List<Eintrag> stapel;
+			long bis;
+			boolean synchronisieren;
+			boolean oeffnen;
+			synchronized (this) {
+				try {
+					long rest;
+					while ((rest = wartezeit()) != 0) {
+						if (rest < 0)
+							wait();
+						else
+							wait(rest);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				stapel = warteschlange;
+				warteschlange = new ArrayList<Eintrag>();
+				bis = eingereicht;
+				synchronisieren = synchronisierenAngefordert
+						|| bis - synchronisiert >= synchronisierenNach
+						|| System.currentTimeMillis() - letzteSynchronisierung >= synchronisierenSpaetestens;
+				synchronisierenAngefordert = false;
+				oeffnen = !geoeffnet;
+				schreibtGerade = true;
+			}
+
+			// Geschrieben wird ausserhalb der Sperre, damit anhaengen() nicht blockiert.
+			// Jeder Fehler wird an abwarten() weitergereicht, der Thread laeuft weiter,
+			// sonst warteten alle Aufrufer von abwarten() fuer immer
+			IOException f = null;
+			try {
+				if (oeffnen) {
+					lpm.openForWriting(dateiname);
+					synchronized (this) {
+						geoeffnet = true;
+					}
+				}
+				for (Eintrag e : stapel)
+					e.schreiben(lpm);
+				lpm.schreibeAus(synchronisieren);
+			} catch (IOException e) {
+				System.err.println("Fehler beim Schreiben des Journals!");
+				System.err.println(e.getMessage());
+				f = e;
+			} catch (Throwable t) {
+				System.err.println("Fehler beim Schreiben des Journals!");
+				t.printStackTrace();
+				f = new IOException("Fehler beim Schreiben des Journals: " + t, t);
+			}
+
+			synchronized (this) {
+				geschrieben = bis;
+				if (synchronisieren) {
+					synchronisiert = bis;
+					letzteSynchronisierung = System.currentTimeMillis();
+				}
+				if (f != null)
+					fehler = f;
+				schreibtGerade = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return 0, wenn es etwas zu tun gibt, sonst die Zeit bis zur naechsten
+	 *         faelligen Synchronisierung oder -1 fuer unbegrenztes Warten
+	 */
+	private long wartezeit() {
+		if (angehalten)
+			return -1;
+		if (!warteschlange.isEmpty() || synchronisierenAngefordert)
+			return 0;
+		if (geschrieben > synchronisiert) {
+			long rest = letzteSynchronisierung + synchronisierenSpaetestens - System.currentTimeMillis();
+			return rest > 0 ? rest : 0;
+		}
+		return -1;
+	}
+
+}
@@ -13,10 +13,8 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.ListIterator;
-import java.util.Vector;
+import java.util.HashMap;
+import java.util.Map;
 
 import shop.common.valueobjects.Artikel;
 import shop.common.valueobjects.Ereignis;
@@ -26,450 +24,186 @@ import shop.server.persistence.log.LogPersistenceManager;
 
 public class EreignisVerwaltung {
 	
-	private Vector<Ereignis> ereignisListe = new Vector<Ereignis>();
 	private LogPersistenceManager lpm = new FileLogPersistenceManager();
+	// haengt jedes Ereignis genau einmal an die Logdatei an
+	private EreignisJournal journal;
+	// entfernt die Eintraege entfernter Artikel im Hintergrund
+	private LogKompaktierer kompaktierer;
 	
-	private Hashtable<Integer, Vector<String[]>> bestandsHistorieListe;	// Wenn man eine Artikel ID angibt, bekommt man dessen Bestandshistorie
+	// Bestandsveraenderungen der letzten 30 Tage je Artikel
+	private BestandsHistorie bestandsHistorie = new BestandsHistorie();
 	
 	
 	/**
-	 * Diese Methode schreibt die Ereignisse in der Ereignisliste in die Logdatei
+	 * Konstruktor der Ereignisverwaltung. Die Eintraege der Logdatei, die aelter als
+	 * 30 Tage sind, werden beim Start geloescht und die uebrigen in die Bestandshistorie
+	 * gebucht, danach werden neue Ereignisse nur noch angehaengt.
 	 * 
-	 * @see LogPersistenceManager
-	 * @see FileLogPersistenceManager
 	 * @param dateiname Name der Logdatei
 	 * @throws IOException
 	 */
-	public synchronized void schreibeDaten(String dateiname) throws IOException{
+	public EreignisVerwaltung(String dateiname) throws IOException{
+		this.cleanLogdatei(dateiname);
+		this.ladeBestandsHistorie(dateiname);
+		journal = new EreignisJournal(dateiname);
+		kompaktierer = new LogKompaktierer(dateiname, journal);
+	}
+	
+	/**
+	 * Diese Methode wartet, bis alle bisherigen Ereignisse in der Logdatei stehen und
+	 * auf das Speichermedium synchronisiert sind. Geschrieben werden die Ereignisse
+	 * bereits beim Hinzufuegen durch das Journal. Anschlieszend werden die abgelaufenen
+	 * Segmente der Logdatei geloescht.
+	 * 
+	 * @see EreignisJournal
+	 * @param dateiname Name der Logdatei
+	 * @throws IOException
+	 */
+	public void schreibeDaten(String dateiname) throws IOException{
+		journal.abwarten(true);
 		this.cleanLogdatei(dateiname);
-		
-		lpm.openForWriting(dateiname);
-
-		Iterator<Ereignis> it = ereignisListe.iterator();
-
-		while(it.hasNext()){
-			Ereignis e = it.next();
-			if(e.getAnzahl() < 0){
-				lpm.speichereAuslagerung(e.getPerson(), Math.abs(e.getAnzahl()), e.getArtikel().getArtikelnummer(), e.getDatum());
-			}else if (e.getAnzahl() > 0){
-				lpm.speichereEinlagerung((Mitarbeiter)e.getPerson(), e.getAnzahl(), e.getArtikel().getArtikelnummer(), e.getDatum());
-			}
-		}
-
-		lpm.close();
 	}
 	
 	
 	/**
 	 * Diese Methode gibt die Bestandshistorie des angegebenen Artikels als ein einziger String zurueck.
+	 * Jede Zeile enthaelt ein Datum und den Bestand am Ende dieses Tages, getrennt durch einen Tabulator.
 	 * 
-	 * Bevor sie dies tut, wird kontrolliert, ob die Bestandshistorie des angegebenen Artikels bereits
-	 * gebildet wurde. Wenn nicht, ruft sie die Methode zum erstellen der Bestandshistorie auf.
-	 * Anschlieszend iteriert sie durch die Bestandshistorie und fuegt alles in einen String.
-	 * 
-	 * @see EreignisVerwaltung#erstelleBestandsHistorie(Artikel, String)
+	 * @see EreignisVerwaltung#gibBestandsHistorieDaten(Artikel, String)
 	 * @param artikel
 	 * @param dateiname
 	 * @return Bestandshistorie des angegebenen Artikels
 	 * @throws IOException
 	 */
 	public String gibBestandsHistorie(Artikel artikel, String dateiname) throws IOException{
-		int artikelID = artikel.getArtikelnummer();
-		if(bestandsHistorieListe == null){
-			bestandsHistorieListe = new Hashtable<Integer, Vector<String[]>>();
+		int[] bestaende = gibBestandsHistorieDaten(artikel, dateiname);
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		Calendar datum = Calendar.getInstance();
+		datum.add(Calendar.DAY_OF_MONTH, -bestaende.length);
+		
+		StringBuilder result = new StringBuilder();
+		for(int i = 0; i < bestaende.length; i++){
+			result.append(format.format(datum.getTime())).append('\t').append(bestaende[i]).append('\n');
+			datum.add(Calendar.DAY_OF_MONTH, 1);
 		}
-		
-		
-		if(!bestandsHistorieListe.containsKey(artikelID)){
-			erstelleBestandsHistorie(artikel, dateiname);
-		}
-		
-		String result = "";
-		
-		// Die Bestandshistorie fuer den Artikel mit artikelID wurde bereits berechnet
-		Iterator<String[]> it = bestandsHistorieListe.get(artikelID).iterator();
-		while(it.hasNext()){
-			String[] bestandHistorie = it.next();
-			result += bestandHistorie[0]+"\t"+bestandHistorie[1]+"\n";
-		}
-		return result;
+		return result.toString();
 	}
 	
 	/**
-	 * Diese Methode gibt die Bestandshistorie des angegebenen Artikels als ein Integer Array zurueck.
+	 * Diese Methode gibt die Bestandshistorie des angegebenen Artikels als ein Integer Array zurueck:
+	 * den Bestand am Ende jedes der letzten 30 Tage, den aeltesten Tag zuerst. Heute ist nicht enthalten.
+	 * 
+	 * Die Bestandsveraenderungen werden beim Hinzufuegen jedes Ereignisses gebucht, die
+	 * Bestandshistorie ist deshalb immer aktuell und wird ohne Lesen der Logdatei berechnet.
 	 * 
-	 * Bevor sie dies tut, wird kontrolliert, ob die Bestandshistorie des angegebenen Artikels bereits
-	 * gebildet wurde. Wenn nicht, ruft sie die Methode zum erstellen der Bestandshistorie auf.
-	 * Anschlieszend iteriert sie durch die Bestandshistorie und fuegt alles in einen String.
+	 * @see BestandsHistorie
 	 * @param artikel
 	 * @param dateiname
-	 * @return
+	 * @return Bestaende der letzten 30 Tage
 	 * @throws IOException
 	 */
 	public int[] gibBestandsHistorieDaten(Artikel artikel, String dateiname) throws IOException{
-		int artikelID = artikel.getArtikelnummer();
-		if(bestandsHistorieListe == null){
-			bestandsHistorieListe = new Hashtable<Integer, Vector<String[]>>();
-		}
-		
-		
-		if(!bestandsHistorieListe.containsKey(artikelID)){
-			erstelleBestandsHistorie(artikel, dateiname);
-		}
-		
-		int[] result = new int[30];
-		
-		// Die Bestandshistorie fuer den Artikel mit artikelID wurde bereits berechnet
-		try{
-			Iterator<String[]> it = bestandsHistorieListe.get(artikelID).iterator();
-			for(int i = 0; i < result.length && it.hasNext(); i++){
-				String[] bestandHistorie = it.next();
-				result[i] = Integer.parseInt(bestandHistorie[1]);
-			}
-		}catch (NumberFormatException nfe){
-			result = null;
-		}
-		
-		return result;
+		return bestandsHistorie.gibBestaende(artikel.getArtikelnummer(), artikel.getBestand());
 	}
-
 	
 	/**
-	 * Diese Methode erstellt die Bestandshistorie des angegebenen Artikels. 
-	 * Sie realisiert dies indem sie durch die Logdatei geht und die Eintraege des Artikels,
-	 * die juenger als 30 Tage sind, entnimmt und mit Hilfe der Anzahl der Ein-/Auslagerungen
-	 * und des Datums die Bestandsveraenderungen eines ganzen Tages rechnet.
-	 * 
-	 * Anschlieszend ruft sie noch die Methode zur Berechnung der Bestaende mit Hilfe des
-	 * aktuellen Artikelbestandes.
+	 * Diese Methode bucht die Eintraege der letzten 30 Tage aus der Logdatei in die
+	 * Bestandshistorie. Sie wird nur beim Start aufgerufen, danach wird jedes Ereignis
+	 * beim Hinzufuegen gebucht. Der Grabstein eines entfernten Artikels verwirft die
+	 * bis dahin gebuchten Veraenderungen dieser Artikelnummer.
 	 * 
-	 * @see EreignisVerwaltung#rechneBestand(int, int)
-	 * @see EreignisVerwaltung#istDatumGueltig(String)
-	 * @param artikel
-	 * @param dateiname
+	 * @param dateiname Name der Logdatei
 	 * @throws IOException
 	 */
-	private void erstelleBestandsHistorie(Artikel artikel, String dateiname) throws IOException {
-		int artikelID = artikel.getArtikelnummer();
-		lpm.openForReading(dateiname);
+	private void ladeBestandsHistorie(String dateiname) throws IOException{
+		lpm.openForReading(dateiname, gibGrenzDatum());
 		
-		// Bilde den Eintrag in der Hashtable
-		Vector<String[]> bestandsHistorie = new Vector<String[]>();
-		bestandsHistorieListe.put(artikelID, bestandsHistorie);
+		// Jedes Datum wird nur einmal geparst
+		Map<String, Long> tage = new HashMap<String, Long>();
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
 		
-		String datum = "";
-		String zeile = "";
-		String[] tokens = null;
-
-		// Gehe von Linie zur Linie, und kontrolliere, ob das Datum nicht aelter als 30 Tage ist.
-		// Wenn die Linie nicht aelter als 30 Tage ist, gehe weiter.
-		do{
-			zeile = lpm.ladeEinAuslagerung();
-			tokens = zeile.split(" ");
-			if(tokens != null && tokens.length > 1){
-				datum = tokens[0]+" "+tokens[1];
-			}else{
-				// Es sind keine Eintraege in den letzten 30 Tagen vorhanden
-				break;
+		String zeile;
+		while(!(zeile = lpm.ladeEinAuslagerung()).equals("")){
+			String[] tokens = zeile.split(" ");
+			int artikelnummer = FileLogPersistenceManager.gibArtikelnummer(tokens);
+			if(artikelnummer < 0){
+				continue;
 			}
-		}while(!istDatumGueltig(datum));
-
-		String[] eintrag = new String[2];
-		int bestandsVeraenderung = 0;
-		boolean ersterDurchlauf = true;
-		// Gehe von Zeile zur zeile, bis zum Schluss der Datei
-		do{
-			// Solange wie die eingelesene Linie nicht das Pattern 'Artikel artikelID'
-			// beinhaltet, gehen wir zur naechsten Linie.
-			while(!zeile.contains("Artikel "+artikelID) && !zeile.equals("")){
-				zeile = lpm.ladeEinAuslagerung();
+			if(FileLogPersistenceManager.istGrabstein(tokens)){
+				bestandsHistorie.entfernen(artikelnummer);
+				continue;
 			}
-			
-			if(!zeile.equals("")){
-				///////////////////////// Eintrag gefunden /////////////////////////
-
-				// Speichere in newDatum das Datum (YYYY-MM-DD) der eingelesenen Zeile
-				tokens = zeile.split(" ");
-				String newDatum = tokens[0];
-
-
-				// Neuer Tag
-				if(!newDatum.equals(datum)){	
-					// Das eingelesene Datum ist nicht das gleiche Datum wie die Zeile vorher
-					// d.h. jetzt kommt eine Zeile mit Ein- oder Auslagerungen von einem
-					// anderen Tag
-					if(!ersterDurchlauf){ // Beim ersten Mal wird nicht abgespeichert
-						// Die Summe der Bestands-Veraenderungen an diesem Tag und datum abspeichern
-						eintrag[0] = datum;
-						eintrag[1] = bestandsVeraenderung+"";
-						bestandsHistorie.add(eintrag);
-						
-						// Die fehlenden Tage zwischen Datum und NewDatum hinzufuegen
-						fehlendeTageHinzufuegen(bestandsHistorie, datum, newDatum);
-					}else{
-						ersterDurchlauf = false;
-						
-					}
-					
-					// Das neue Datum wird in 'datum' gespeichert
-					datum = newDatum;
-
-					// Re-intialisierung der Variablen
-					eintrag = new String[2];
-					bestandsVeraenderung = 0;
-					
+			try{
+				Long tag = tage.get(tokens[0]);
+				if(tag == null){
+					tag = BestandsHistorie.tagNummer(format.parse(tokens[0]).getTime());
+					tage.put(tokens[0], tag);
 				}
-
-
-				// Entnehmen der Bestands-Veraenderung in der Zeile
-				try{
-					if(tokens[8].equals("eingelagert")){
-						// Da wir den Bestand vom aktuellem Bestand zurueck rechnen,
-						// muessen wir die anzahl der Einlagerung wieder subtrahieren
-						bestandsVeraenderung -= Integer.parseInt(tokens[4]);
-					}else{
-						bestandsVeraenderung += Integer.parseInt(tokens[4]);
-					}
-				}catch (NumberFormatException e){
-					System.err.println();
-				}
-
-				zeile = lpm.ladeEinAuslagerung();
-			}
-		}while(!zeile.equals(""));
-		
-		
-		int bestand = artikel.getBestand();
-		String heute = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
-		
-		// Wenn das Datum der letzten Zeile das heutige Datum ist, wird es nicht abgespeichert
-		if(!heute.equals(datum)){
-			// Abspeicheren der zwischengelagerten Daten:
-			eintrag[0] = datum;
-			eintrag[1] = bestandsVeraenderung+"";
-			bestandsHistorie.add(eintrag);
-			
-			// Fuege noch die Tage bis heute hinzu
-			fehlendeTageHinzufuegen(bestandsHistorie, datum, heute);
-		}else{
-			// Um die Bestandshistorie zurueck rechnen zu koennen
-			// muessen die Ein- und Auslagerungen von Heute jedoch
-			// beachtet werden
-			bestand += bestandsVeraenderung;
-		}
-		
-		// Jetzt muessen nur noch die Ereignisse in der Ereignissliste
-		// ueberprueft werden, da diese noch nich in der Log Datei
-		// zu finden sind
-		
-		if(!ereignisListe.isEmpty()){
-			Iterator<Ereignis> iter = ereignisListe.iterator();
-			while(iter.hasNext()){
-				Ereignis e = iter.next();
-				if(e.getArtikel().equals(artikel)){
-					bestand += -e.getAnzahl();
+				int anzahl = Integer.parseInt(tokens[4]);
+				if(!tokens[8].equals("eingelagert")){
+					anzahl = -anzahl;
 				}
+				bestandsHistorie.buchen(artikelnummer, anzahl, tag);
+			}catch(ParseException e){
+				System.err.println("Fehler beim parsen des Datums!");
+				System.err.println("Fehler ausgeloest durch: '"+zeile+"'");
+			}catch(NumberFormatException e){
+				System.err.println("Fehler beim parsen der Anzahl!");
+				System.err.println("Fehler ausgeloest durch: '"+zeile+"'");
 			}
 		}
 		
 		lpm.close();
-		
-		// Jetzt wird noch die 'Vorgeschichte' des Artikels hinzugefuegt! Dies ist noetig, um 
-		// 30 Eintraege in der Bestandshistorie zu haben, auch wenn das Artikel noch nicht
-		// solange im Bestand ist, oder es Bestandsveraenderungen gab, die aelter als 30 Tage sind.
-		if(bestandsHistorie.size() < 30)
-			fuegeVorgeschichteHinzu(bestandsHistorie);
-		
-		// Jetzt wird das Feld mit der Bestandsveraenderung, durch
-		// den Bestand, der am Ende des jeweiligen Tages vorliegte,
-		// ersetzt
-		rechneBestand(artikel.getArtikelnummer(), bestand);
-	}
-	
-	/**
-	 * Diese Methode fuegt der Bestandshistorie eine Vorgeschichte hinzu, um immer auf
-	 * 30 Eintraege zu kommen.
-	 * Z.B.:
-	 * 		- Wenn ein Artikel erst vor 10 Tagen hinzugefuegt wurde, muss diese Methode
-	 * 		  die 20 vorherigen Tage hinzufuegen, indem sie den Bestand des letzten
-	 * 		  Eintrags nimmt, und diesen fuer diese 20 Tage einsetzt.
-	 * 		- Oder wenn ein Artikel schon laenger existiert und die letzten Veraenderungen
-	 * 		  schon weiter zurueck liegen.
-	 *  
-	 * @param bestandsHistorie
-	 */
-	private void fuegeVorgeschichteHinzu(Vector<String[]> bestandsHistorie){
-		try {
-			Calendar datum = Calendar.getInstance();
-			if(bestandsHistorie.size() == 0){
-				datum.setTime(new Date());
-			}else{
-				datum.setTime(new SimpleDateFormat("yyyy-MM-dd").parse(bestandsHistorie.get(0)[0]));
-			}
-			
-			while(bestandsHistorie.size() < 30){
-				datum.add(Calendar.DAY_OF_MONTH, -1);
-				String[] eintrag = new String[2];
-				eintrag[0] = new SimpleDateFormat("yyyy-MM-dd").format(datum.getTime());
-				eintrag[1] = 0+"";
-				bestandsHistorie.add(0, eintrag);
-			}
-		} catch (ParseException e) {
-			System.err.println("Fehler beim parsen des Datums! - in fuegeVorgeschichteHinzu()");
-			System.err.println(e.getMessage());
-		}
 	}
 	
 	/**
-	 * Diese Methode fuegt die fehlenden Tage zur Bestandshistorie hinzu. 
+	 * Diese Methode loescht die Eintraege aus der Logdatei, die aelter als 30 Tage sind.
+	 * Da die Logdatei in Segmente je Tag aufgeteilt ist, werden dabei nur ganze Segmente
+	 * geloescht; Eintraege vom Tag der Grenze bleiben erhalten und werden von der
+	 * Bestandshistorie nicht mehr beachtet.
 	 * 
-	 * Z.B.:
-	 * 		- Wenn ein Artikel vor mehereren Tagen als letzt veraendert wurde, fuegt diese
-	 * 		  Methode die fehlenden Tage bis zum aktuellem Datum hinzu, indem sie fuer
-	 * 		  diese Tage den Bestand von Gestern einsetzt.
-	 * 
-	 * @param bestandsHistorie
-	 * @param oldDatum
-	 * @param newDatum
-	 */
-	private void fehlendeTageHinzufuegen(Vector<String[]> bestandsHistorie, String oldDatum, String newDatum){
-		try {
-			// Gib die Calendar Instanz
-			Calendar altesDatum = Calendar.getInstance();
-			Calendar neuesDatum = Calendar.getInstance();
-			
-			// Setze die Daten
-			altesDatum.setTime(new SimpleDateFormat("yyyy-MM-dd").parse(oldDatum));
-			neuesDatum.setTime(new SimpleDateFormat("yyyy-MM-dd").parse(newDatum));
-			
-			// Da es sich um das angegebene 'oldDatum' um das Datum handelt, was zuletzt zur Bestandshistorie
-			// hinzugefuegt wurde, muss es zuerst noch inkrementiert werden, bevor wir in die Schleife gehen
-			altesDatum.add(Calendar.DAY_OF_MONTH, 1);
-			
-			// Wenn newDatum heute ist wird es dekrementiert, da Heute nicht in der Bestandshistorie angezeigt
-			// werden soll.
-			if(new SimpleDateFormat("yyyy-MM-dd").format(new Date()).equals(newDatum)){
-				neuesDatum.add(Calendar.DAY_OF_MONTH, -1);
-			}
-			
-			if(!neuesDatum.before(altesDatum)){
-				while(!altesDatum.equals(neuesDatum)){
-					String tmpDatum = new SimpleDateFormat("yyyy-MM-dd").format(altesDatum.getTime());
-					String eintrag[] = new String[2];
-					eintrag[0] = tmpDatum;
-					eintrag[1] = 0+"";
-					bestandsHistorie.add(eintrag);
-					altesDatum.add(Calendar.DAY_OF_MONTH, 1);
-				}
-			}
-			
-		} catch (ParseException e) {
-			System.err.println("Fehler beim parsen des Datums!");
-			System.err.println("Fehler ausgeloest durch: '"+oldDatum+"' oder '"+newDatum+"'!");
-			System.err.println(e.getMessage());
-		}
-	}
-	
-	/**
-	 * Diese Methode berechnet den Bestand am Ende des Tages, der letzten 30 Tage.
-	 * Dies tut sie indem sie vom aktuellen Bestand des Artikels zurueck rechnet.
-	 * 
-	 * @param artikelID
-	 * @param bestand Bestand wie er am Anfang des heutigen Tages, bzw am Ende des gestrigen Tages war.
-	 */
-	private void rechneBestand(int artikelID, int bestand){
-		Vector<String[]> bestandsHistorie = bestandsHistorieListe.get(artikelID);
-		ListIterator<String[]> lIter = bestandsHistorie.listIterator(bestandsHistorie.size());
-		
-		while(lIter.hasPrevious()){
-			String[] eintrag = lIter.previous();
-			int bestandsVeraenderung = Integer.parseInt(eintrag[1]);
-			eintrag[1] = bestand+"";
-			bestand += bestandsVeraenderung;
-		}
-	}
-	
-	/**
-	 * Diese Methode kontrolliert, ob das angegebene Datum (im Format "yyyy-MM-dd HH:mm:ss") nicht
-	 * aelter als 30 Tage ist.
-	 * 
-	 * @see Calendar
-	 * @param datum Datum im Format "yyyy-MM-dd HH:mm:ss".
-	 * @return true wenn das angegebene Datum nicht aelter als 30 Tage ist
+	 * @see LogPersistenceManager#entferneEintraegeVor(Date, String)
+	 * @see FileLogPersistenceManager#entferneEintraegeVor(Date, String)
+	 * @param dateiname Name der Logdatei
+	 * @throws IOException
 	 */
-	private boolean istDatumGueltig(String datum){
-		boolean gueltig = false;
-		try {
-			// Gib die Calendar Instanz
-			Calendar aktuellesDatum = Calendar.getInstance();
-			Calendar eintragDatum = Calendar.getInstance();
-			
-			// Setze das aktuelle Datum
-			aktuellesDatum.setTime(new Date());
-			// Parse die Parametervariable zum Typ 'Date' und setze diese dann als Calendar Datum
-			eintragDatum.setTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(datum));
-			
-			// Gehe vom aktuellem Datum 30 Tage zurueck
-			aktuellesDatum.add(Calendar.DAY_OF_MONTH, -30);
-			
-			// Wenn das (verringerte) aktuelleDatum vor der Zeit des Eintrag-Datums liegt, ist der Eintrag gueltig
-			if(aktuellesDatum.before(eintragDatum)){
-				gueltig = true;
-			}
-		} catch (ParseException e) {
-			System.err.println("Fehler beim parsen des Datums!");
-			System.err.println("Fehler ausgeloest durch: '"+datum+"'");
-			System.err.println(e.getMessage());
-		}
-		return gueltig;
+	private void cleanLogdatei(String dateiname) throws IOException{
+		lpm.entferneEintraegeVor(gibGrenzDatum(), dateiname);
 	}
 	
 	/**
-	 * Diese Methode loescht alle Zeilen aus der Logdatei, die aelter als 30 Tage sind.
-	 * Dies realisiert sie indem sie durch die Logdatei geht und die erste Zeile, die
-	 * juenger als 30 Tage ist, der LogPersistenceManager-internen-Methode uebergibt.
-	 * 
-	 * @see LogPersistenceManager#cleanLogdatei(String)
-	 * @see FileLogPersistenceManager#cleanLogdatei(String)
-	 * @param dateiname Name der Logdatei
-	 * @throws IOException
+	 * @return Zeitpunkt vor 30 Tagen, aeltere Eintraege werden nicht mehr beachtet
 	 */
-	private void cleanLogdatei(String dateiname) throws IOException{
-		lpm.openForReading(dateiname);
-		String zeile = "";
-		
-		// Suche nach der ersten Zeile die nicht aelter als 30 Tage ist
-		while(!(zeile = lpm.ladeEinAuslagerung()).equals("")){
-			String[] tokens = zeile.split(" ");
-			if(istDatumGueltig(tokens[0]+" "+tokens[1])){
-				break;
-			}
-		}
-		
-		lpm.close();
-		
-		// Loeschen aller Zeilen, die sich vor der gefundenen Zeile befinden
-		lpm.cleanLogdatei(zeile, dateiname);
+	private Date gibGrenzDatum(){
+		Calendar grenze = Calendar.getInstance();
+		grenze.add(Calendar.DAY_OF_MONTH, -30);
+		return grenze.getTime();
 	}
 	
 	/**
-	 * Dies Methode entfernt ale Eintraege eines Artikels aus der Log Datei um damit
-	 * die Probleme zu verhindern, wenn dessen ID nochmals benutzt wird.
-	 * @param a Artikel zum entfernen
+	 * Dies Methode markiert einen Artikel in der Log Datei als entfernt (Grabstein), um
+	 * damit die Probleme zu verhindern, wenn dessen ID nochmals benutzt wird. Die
+	 * Bestandshistorie des Artikels wird verworfen, die Eintraege vor dem Grabstein
+	 * werden spaeter vom Kompaktierer aus der Log Datei entfernt.
+	 * @param m Mitarbeiter, der den Artikel entfernt
+	 * @param artikelnummer Nummer des entfernten Artikels
 	 * @param dateiname Name der Logdatei
 	 * @throws IOException
 	 */
-	public void entferneArtikelAusLog(int artikelnummer, String dateiname) throws IOException{
-		lpm.entferneArtikelAusLog(artikelnummer+"", dateiname);
+	public void entferneArtikelAusLog(Mitarbeiter m, int artikelnummer, String dateiname) throws IOException{
+		journal.entfernungAnhaengen(m, artikelnummer, new Date());
+		bestandsHistorie.entfernen(artikelnummer);
+		kompaktierer.anstossen();
 	}
 	
 	/**
-	 * Dies Methode fuegt ein Ereignis zur Ereignisliste hinzu.
+	 * Dies Methode uebergibt ein Ereignis dem Journal, das es an die Logdatei anhaengt.
 	 * 
 	 * @param e
 	 */
 	public void hinzufuegen(Ereignis e){
-		ereignisListe.add(e);
+		bestandsHistorie.buchen(e.getArtikel().getArtikelnummer(), e.getAnzahl(), BestandsHistorie.tagNummer(e.getDatum().getTime()));
+		journal.anhaengen(e);
 	}
 	
 	/**
@@ -482,6 +216,7 @@ public class EreignisVerwaltung {
 	 */
 	public String liesLogDatei(String dateiname) throws IOException{
 		String log = "";		
+		journal.abwarten(false);
 		lpm.openForReading(dateiname);
 		
 		String zeile = lpm.ladeEinAuslagerung();
@@ -493,13 +228,5 @@ public class EreignisVerwaltung {
 		lpm.close();
 		return log;
 	}
-	
-	/**
-	 * Diese Methode gibt die Ereignisliste zurueck.
-	 * @return Ereignisliste
-	 */
-	public Vector<Ereignis> getEreignisListe(){
-		return ereignisListe;
-	}
 
 }
@@ -0,0 +1,174 @@
+package shop.server.domain;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hash-Tabelle mit int-Schluesseln (z.B. Artikelnummern), die ohne das
+ * Verpacken der Schluessel in Integer-Objekte auskommt.
+ *
+ * Lesende Zugriffe (get, containsKey) sind ohne Sperre moeglich und sehen
+ * immer einen konsistenten Stand, schreibende Zugriffe werden synchronisiert.
+ * Die Eintraege eines Buckets bilden eine unveraenderliche Kette, die bei
+ * jeder Aenderung ersetzt wird.
+ *
+ * @param <V> Typ der Werte
+ */
+public class IntHashMap<V> {
+
+	private static final int ANFANGS_KAPAZITAET = 16;
+	private static final float LADEFAKTOR = 0.75f;
+
+	private static final class Eintrag<V> {
+		final int schluessel;
+		final V wert;
+		final Eintrag<V> naechster;
+
+		Eintrag(int schluessel, V wert, Eintrag<V> naechster) {
+			this.schluessel = schluessel;
+			this.wert = wert;
+			this.naechster = naechster;
+		}
+	}
+
+	private volatile AtomicReferenceArray<Eintrag<V>> tabelle;
+	private volatile int anzahl = 0;
+
+	/**
+	 * Konstruktor einer leeren Tabelle.
+	 */
+	public IntHashMap() {
+		this(ANFANGS_KAPAZITAET);
+	}
+
+	/**
+	 * Konstruktor einer leeren Tabelle, die mindestens kapazitaet Eintraege
+	 * ohne Vergroesserung aufnehmen kann.
+	 *
+	 * @param kapazitaet
+	 */
+	public IntHashMap(int kapazitaet) {
+		int groesse = ANFANGS_KAPAZITAET;
+		while (groesse * LADEFAKTOR < kapazitaet)
+			groesse <<= 1;
+		tabelle = new AtomicReferenceArray<Eintrag<V>>(groesse);
+	}
+
+	// verteilt auch fortlaufende Nummern gleichmaessig auf die Buckets
+	private static int bucket(int schluessel, int groesse) {
+		int h = schluessel * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (groesse - 1);
+	}
+
+	/**
+	 * Methode die den Wert zu einem Schluessel zurueck gibt.
+	 *
+	 * @param schluessel
+	 * @return Wert oder null, wenn der Schluessel nicht enthalten ist
+	 */
+	public V get(int schluessel) {
+		AtomicReferenceArray<Eintrag<V>> t = tabelle;
+		Eintrag<V> e = t.get(bucket(schluessel, t.length()));
+		while (e != null) {
+			if (e.schluessel == schluessel)
+				return e.wert;
+			e = e.naechster;
+		}
+		return null;
+	}
+
+	/**
+	 * @param schluessel
+	 * @return true, wenn der Schluessel enthalten ist
+	 */
+	public boolean containsKey(int schluessel) {
+		return get(schluessel) != null;
+	}
+
+	/**
+	 * Methode zum Einfuegen oder Ersetzen eines Werts. null-Werte sind nicht
+	 * erlaubt.
+	 *
+	 * @param schluessel
+	 * @param wert
+	 * @return vorheriger Wert oder null
+	 */
+	public synchronized V put(int schluessel, V wert) {
+		if (wert == null)
+			throw new NullPointerException();
+		AtomicReferenceArray<Eintrag<V>> t = tabelle;
+		int i = bucket(schluessel, t.length());
+		Eintrag<V> kopf = t.get(i);
+		V alt = null;
+		for (Eintrag<V> e = kopf; e != null; e = e.naechster) {
+			if (e.schluessel == schluessel) {
+				alt = e.wert;
+				break;
+			}
+		}
+		if (alt != null) {
+			t.set(i, new Eintrag<V>(schluessel, wert, ohne(kopf, schluessel)));
+		} else {
+			t.set(i, new Eintrag<V>(schluessel, wert, kopf));
+			anzahl++;
+			if (anzahl > t.length() * LADEFAKTOR)
+				vergroessern();
+		}
+		return alt;
+	}
+
+	/**
+	 * Methode zum Entfernen eines Schluessels.
+	 *
+	 * @param schluessel
+	 * @return entfernter Wert oder null
+	 */
+	public synchronized V remove(int schluessel) {
+		AtomicReferenceArray<Eintrag<V>> t = tabelle;
+		int i = bucket(schluessel, t.length());
+		Eintrag<V> kopf = t.get(i);
+		for (Eintrag<V> e = kopf; e != null; e = e.naechster) {
+			if (e.schluessel == schluessel) {
+				t.set(i, ohne(kopf, schluessel));
+				anzahl--;
+				return e.wert;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Anzahl der Eintraege
+	 */
+	public int size() {
+		return anzahl;
+	}
+
+	/**
+	 * Methode zum Entfernen aller Eintraege.
+	 */
+	public synchronized void clear() {
+		tabelle = new AtomicReferenceArray<Eintrag<V>>(ANFANGS_KAPAZITAET);
+		anzahl = 0;
+	}
+
+	// kopiert die Kette bis zum zu entfernenden Eintrag, der Rest wird weiterverwendet
+	private Eintrag<V> ohne(Eintrag<V> kopf, int schluessel) {
+		if (kopf.schluessel == schluessel)
+			return kopf.naechster;
+		return new Eintrag<V>(kopf.schluessel, kopf.wert, ohne(kopf.naechster, schluessel));
+	}
+
+	// baut eine doppelt so grosse Tabelle auf und veroeffentlicht sie erst danach
+	private void vergroessern() {
+		AtomicReferenceArray<Eintrag<V>> alt = tabelle;
+		AtomicReferenceArray<Eintrag<V>> neu = new AtomicReferenceArray<Eintrag<V>>(alt.length() * 2);
+		for (int i = 0; i < alt.length(); i++) {
+			for (Eintrag<V> e = alt.get(i); e != null; e = e.naechster) {
+				int j = bucket(e.schluessel, neu.length());
+				neu.set(j, new Eintrag<V>(e.schluessel, e.wert, neu.get(j)));
+			}
+		}
+		tabelle = neu;
+	}
+
+}
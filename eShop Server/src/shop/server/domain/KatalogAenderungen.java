@@ -0,0 +1,50 @@
+package shop.server.domain;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Ergebnis der Abfrage, welche Artikel sich seit einer Version des
+ * Artikelbestands geaendert haben.
+ * 
+ * @see ArtikelVerwaltung#getAenderungenSeit(long)
+ */
+public class KatalogAenderungen {
+
+	private final long version;
+	private final Set<Integer> artikelnummern;
+
+	/**
+	 * @param version aktuelle Version des Artikelbestands
+	 * @param artikelnummern Nummern der geaenderten Artikel, oder null wenn die
+	 *                       Aenderungen nicht mehr vollstaendig vorliegen
+	 */
+	KatalogAenderungen(long version, Set<Integer> artikelnummern) {
+		this.version = version;
+		this.artikelnummern = artikelnummern == null ? null : Collections.unmodifiableSet(artikelnummern);
+	}
+
+	/**
+	 * @return Version des Artikelbestands, bis zu der die Aenderungen reichen
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return false, wenn die Aenderungen seit der angefragten Version nicht
+	 *         mehr bekannt sind und der ganze Artikelbestand gesendet werden muss
+	 */
+	public boolean istVollstaendig() {
+		return artikelnummern != null;
+	}
+
+	/**
+	 * @return Nummern der hinzugefuegten, geaenderten oder entfernten Artikel
+	 *         (aufsteigend sortiert)
+	 */
+	public Set<Integer> getArtikelnummern() {
+		return artikelnummern;
+	}
+
+}
@@ -0,0 +1,45 @@
+package shop.server.domain;
+
+import java.util.Collections;
+import java.util.List;
+
+import shop.common.valueobjects.Artikel;
+
+/**
+ * Unveraenderlicher Stand des Artikelbestands in beiden Sortierungen.
+ * 
+ * Ein Snapshot gehoert zu genau einer Version des Artikelbestands und wird
+ * von ArtikelVerwaltung erst dann neu aufgebaut, wenn sich der Bestand seither
+ * geaendert hat. Die Listen koennen deshalb von beliebig vielen Threads
+ * gleichzeitig gelesen werden, ohne kopiert oder sortiert zu werden.
+ * 
+ * @see ArtikelVerwaltung#getSnapshot()
+ */
+public class KatalogSnapshot {
+
+	private final long version;
+	private final List<Artikel> sortiertNachArtikelnummer;
+	private final List<Artikel> sortiertNachBezeichnung;
+
+	KatalogSnapshot(long version, List<Artikel> sortiertNachArtikelnummer, List<Artikel> sortiertNachBezeichnung) {
+		this.version = version;
+		this.sortiertNachArtikelnummer = Collections.unmodifiableList(sortiertNachArtikelnummer);
+		this.sortiertNachBezeichnung = Collections.unmodifiableList(sortiertNachBezeichnung);
+	}
+
+	/**
+	 * @return Version des Artikelbestands, zu der dieser Snapshot gehoert
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public List<Artikel> getArtikelSortiertNachArtikelnummer() {
+		return sortiertNachArtikelnummer;
+	}
+
+	public List<Artikel> getArtikelSortiertNachBezeichnung() {
+		return sortiertNachBezeichnung;
+	}
+
+}
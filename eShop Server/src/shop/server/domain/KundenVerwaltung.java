@@ -1,9 +1,12 @@
 package shop.server.domain;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
@@ -31,10 +34,27 @@ import shop.server.persistence.data.ObjectDataPersistenceManager;
 public class KundenVerwaltung {
 	
 	private Vector<Kunde> kundenListe = new Vector<Kunde>();
+	// index of the costumer list by ID number
+	private IntHashMap<Kunde> kundenNachId = new IntHashMap<Kunde>();
+	// index of the costumer list by name and address (see adressSchluessel())
+	private Map<String, List<Kunde>> kundenNachAdresse = new HashMap<String, List<Kunde>>();
 	
 	private DataPersistenceManager pm = new ObjectDataPersistenceManager();
 	
-	private WarenkorbVerwaltung warenkorbVerwaltung = new WarenkorbVerwaltung();
+	private WarenkorbVerwaltung warenkorbVerwaltung;
+	
+	// gemeinsamer Index der Usernamen von Mitarbeitern und Kunden
+	private UsernameIndex usernamen;
+	
+	/**
+	 * Konstruktor der Kundenverwaltung.
+	 * @param lager Bestaende der Artikel, die der Warenkorb reserviert
+	 * @param usernamen Index der Usernamen, in den die Kunden eingetragen werden
+	 */
+	KundenVerwaltung(Lagerbestand lager, UsernameIndex usernamen) {
+		warenkorbVerwaltung = new WarenkorbVerwaltung(lager);
+		this.usernamen = usernamen;
+	}
 	
 	public void liesDaten(String dateiName) throws IOException{
 		pm.openForReading(dateiName);
@@ -72,9 +92,16 @@ public class KundenVerwaltung {
 	/**
 	 * Method to insert a new costumer
 	 */
-	public void einfuegen(Kunde k) throws KundeExistiertBereitsException {
-		if(!kundenListe.contains(k)){
+	public synchronized void einfuegen(Kunde k) throws KundeExistiertBereitsException {
+		if(!kundenNachId.containsKey(k.getId())){
 			kundenListe.add(k);
+			kundenNachId.put(k.getId(), k);
+			adresseEintragen(k);
+			if(!usernamen.eintragen(k)){
+				// only possible with old data files; the login tells them apart by password
+				System.err.println("Username '" + k.getUsername() + "' of costumer " + k.getId() + " is already in use");
+				usernamen.doppeltEintragen(k);
+			}
 		}else{
 			throw new KundeExistiertBereitsException(k, "Fehler beim einfuegen!");
 		}
@@ -82,20 +109,81 @@ public class KundenVerwaltung {
 	
 	public synchronized void bearbeiten(int id, String passwort, String name, String strasse, int plz, String wohnort, boolean blockiert) throws KundeExistiertNichtException {
 		Kunde k = sucheKunde(id);
+		adresseAustragen(k);
 		k.setPasswort(passwort);
 		k.setName(name);
 		k.setStrasse(strasse);
 		k.setPlz(plz);
 		k.setWohnort(wohnort);
 		k.setBlockiert(blockiert);
+		adresseEintragen(k);
 	}
 	
 	/**
 	 * Method deletes the costumer instance.
 	 * @param k Kunden instance to delete
 	 */
-	public void loeschen(Kunde k){
-		this.kundenListe.remove(k);
+	public synchronized void loeschen(Kunde k){
+		if(this.kundenListe.remove(k)){
+			kundenNachId.remove(k.getId());
+			adresseAustragen(k);
+			usernamen.austragen(k);
+			warenkorbVerwaltung.vergessen(k);
+		}
+	}
+	
+	/**
+	 * searching for costumer by name and address (used for a forgotten login)
+	 * @param name
+	 * @param strasse
+	 * @param plz
+	 * @param wohnort
+	 * @return the first costumer with exactly this name and address, or "null" if none was found.
+	 */
+	public synchronized Kunde sucheKunde(String name, String strasse, int plz, String wohnort){
+		List<Kunde> kandidaten = kundenNachAdresse.get(adressSchluessel(name, strasse, plz, wohnort));
+		if(kandidaten != null){
+			for(Kunde k : kandidaten){
+				// the key is normalized, the comparison stays exact
+				if(k.getName().equals(name) && k.getStrasse().equals(strasse) && k.getPlz() == plz && k.getWohnort().equals(wohnort)){
+					return k;
+				}
+			}
+		}
+		return null;
+	}
+	
+	private void adresseEintragen(Kunde k){
+		String schluessel = adressSchluessel(k.getName(), k.getStrasse(), k.getPlz(), k.getWohnort());
+		List<Kunde> kandidaten = kundenNachAdresse.get(schluessel);
+		if(kandidaten == null){
+			kandidaten = new ArrayList<Kunde>(1);
+			kundenNachAdresse.put(schluessel, kandidaten);
+		}
+		kandidaten.add(k);
+	}
+	
+	private void adresseAustragen(Kunde k){
+		String schluessel = adressSchluessel(k.getName(), k.getStrasse(), k.getPlz(), k.getWohnort());
+		List<Kunde> kandidaten = kundenNachAdresse.get(schluessel);
+		if(kandidaten != null){
+			kandidaten.remove(k);
+			if(kandidaten.isEmpty()){
+				kundenNachAdresse.remove(schluessel);
+			}
+		}
+	}
+	
+	/**
+	 * builds the key of the address index: name, zip code, street and city,
+	 * trimmed and in lower case, separated by a character that cannot be typed in.
+	 */
+	private static String adressSchluessel(String name, String strasse, int plz, String wohnort){
+		return normalisieren(name) + '\0' + plz + '\0' + normalisieren(strasse) + '\0' + normalisieren(wohnort);
+	}
+	
+	private static String normalisieren(String s){
+		return s == null ? "" : s.trim().toLowerCase();
 	}
 	
 	/**
@@ -105,17 +193,7 @@ public class KundenVerwaltung {
 	 * @return the costumer instance with specified ID number, or "null" if no instance Number was found.
 	 */
 	public Kunde sucheKunde(int id) throws KundeExistiertNichtException{
-		Kunde k = null;
-		
-		Iterator<Kunde> it = kundenListe.iterator();
-		
-		while(it.hasNext()){
-			Kunde tmp = it.next();
-			if(tmp.getId() == id){
-				k = tmp;
-				break;
-			}
-		}
+		Kunde k = kundenNachId.get(id);
 		
 		if(k == null){
 			throw new KundeExistiertNichtException(id, "");
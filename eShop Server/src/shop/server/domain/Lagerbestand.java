@@ -0,0 +1,130 @@
+package shop.server.domain;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
+import shop.common.exceptions.ArtikelBestandIstZuKleinException;
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Massengutartikel;
+
+/**
+ * Klasse zur Verwaltung der Bestaende aller Artikel ohne gemeinsame Sperre.
+ *
+ * Der Bestand jedes Artikels wird in einem eigenen atomaren Zaehler gefuehrt
+ * und per compare-and-set veraendert. Reservierungen fuer den Warenkorb
+ * lassen den Bestand nie negativ werden, bei Massengutartikeln muss jede
+ * Aenderung ein Vielfaches der Packungsgroesse sein. Nach jeder Aenderung wird
+ * der Zaehlerstand in den Bestand des Artikels uebernommen, damit Anzeige und
+ * Persistenz unveraendert getBestand() verwenden koennen.
+ */
+class Lagerbestand {
+
+	private IntHashMap<AtomicInteger> bestaende = new IntHashMap<AtomicInteger>();
+
+	/**
+	 * Methode zum Aufnehmen eines Artikels mit seinem aktuellen Bestand.
+	 *
+	 * @param artikel
+	 */
+	void aufnehmen(Artikel artikel) {
+		bestaende.put(artikel.getArtikelnummer(), new AtomicInteger(artikel.getBestand()));
+	}
+
+	/**
+	 * Methode zum Entfernen des Zaehlers eines Artikels.
+	 *
+	 * @param artikelnummer
+	 */
+	void entfernen(int artikelnummer) {
+		bestaende.remove(artikelnummer);
+	}
+
+	/**
+	 * Methode, die den Zaehlerstand eines Artikels zurueck gibt.
+	 *
+	 * @param artikelnummer
+	 * @return Zaehlerstand, oder -1 wenn der Artikel keinen Zaehler hat
+	 */
+	int gibBestand(int artikelnummer) {
+		AtomicInteger zaehler = bestaende.get(artikelnummer);
+		return zaehler == null ? -1 : zaehler.get();
+	}
+
+	/**
+	 * Methode zum Reservieren einer Stueckzahl fuer den Warenkorb.
+	 *
+	 * @param artikel
+	 * @param anzahl
+	 * @throws ArtikelBestandIstZuKleinException wenn der Bestand nicht ausreicht
+	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException
+	 */
+	void reservieren(Artikel artikel, int anzahl) throws ArtikelBestandIstZuKleinException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		if (!buchen(artikel, -anzahl, true))
+			throw new ArtikelBestandIstZuKleinException(artikel, " - in 'reservieren()'");
+	}
+
+	/**
+	 * Methode zum Freigeben einer reservierten Stueckzahl.
+	 *
+	 * @param artikel
+	 * @param anzahl
+	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException
+	 */
+	void freigeben(Artikel artikel, int anzahl) throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		buchen(artikel, anzahl, false);
+	}
+
+	/**
+	 * Methode zum Veraendern des Bestands durch einen Mitarbeiter. Wie bisher
+	 * wird dabei nicht geprueft, ob der Bestand negativ wird.
+	 *
+	 * @param artikel
+	 * @param anzahl
+	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException
+	 */
+	void veraendern(Artikel artikel, int anzahl) throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		buchen(artikel, anzahl, false);
+	}
+
+	/**
+	 * @return false, wenn der Bestand mit untergrenze negativ wuerde
+	 */
+	private boolean buchen(Artikel artikel, int differenz, boolean untergrenze) throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		AtomicInteger zaehler = bestaende.get(artikel.getArtikelnummer());
+		if (zaehler == null) {
+			// Der Artikel wurde inzwischen entfernt (z.B. liegt er noch in einem
+			// Warenkorb), sein Bestand wird nur noch direkt gefuehrt
+			synchronized (artikel) {
+				if (untergrenze && artikel.getBestand() + differenz < 0)
+					return false;
+				artikel.setBestand(artikel.getBestand() + differenz);
+			}
+			return true;
+		}
+
+		if (artikel instanceof Massengutartikel && differenz % ((Massengutartikel) artikel).getPackungsgroesse() != 0)
+			throw new ArtikelBestandIstKeineVielfacheDerPackungsgroesseException(artikel, " - in 'buchen()'");
+
+		int alt;
+		int neu;
+		do {
+			alt = zaehler.get();
+			neu = alt + differenz;
+			if (untergrenze && neu < 0)
+				return false;
+		} while (!zaehler.compareAndSet(alt, neu));
+
+		// Unter der Sperre des Artikels wird immer der neueste Zaehlerstand
+		// uebernommen, so kann ein langsamer Thread keinen aelteren Stand schreiben
+		synchronized (artikel) {
+			try {
+				artikel.setBestand(zaehler.get());
+			} catch (ArtikelBestandIstKeineVielfacheDerPackungsgroesseException e) {
+				zaehler.addAndGet(-differenz);
+				throw e;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,119 @@
+package shop.server.domain;
+
+import java.io.IOException;
+
+import shop.server.persistence.log.FileLogPersistenceManager;
+import shop.server.persistence.log.LogPersistenceManager;
+
+/**
+ * Klasse zum Entfernen der Eintraege entfernter Artikel aus der Logdatei im
+ * Hintergrund.
+ *
+ * Beim Entfernen eines Artikels wird nur ein Grabstein angehaengt. Der
+ * Kompaktierer wird dabei angestossen und kompaktiert die Logdatei nach einer
+ * Verzoegerung in einem eigenen Thread, so werden mehrere kurz nacheinander
+ * entfernte Artikel in einem Durchgang erledigt. Waehrend des Kompaktierens ist
+ * das Journal angehalten, neue Ereignisse warten in dessen Warteschlange.
+ */
+class LogKompaktierer implements Runnable {
+
+	// Verzoegerung nach dem ersten Anstoss in Millisekunden
+	static final long VERZOEGERUNG = 1000L * 60;
+
+	private String dateiname;
+	private EreignisJournal journal;
+	private LogPersistenceManager lpm = new FileLogPersistenceManager();
+	private long verzoegerung;
+
+	private boolean angestossen = false;
+	private Thread thread = null;
+
+	/**
+	 * Konstruktor mit der voreingestellten Verzoegerung.
+	 *
+	 * @param dateiname Name der Logdatei
+	 * @param journal Journal, das in die Logdatei schreibt
+	 */
+	LogKompaktierer(String dateiname, EreignisJournal journal) {
+		this(dateiname, journal, VERZOEGERUNG);
+	}
+
+	/**
+	 * Konstruktor des Kompaktierers.
+	 *
+	 * @param dateiname Name der Logdatei
+	 * @param journal Journal, das in die Logdatei schreibt
+	 * @param verzoegerung Verzoegerung nach dem ersten Anstoss in Millisekunden
+	 */
+	LogKompaktierer(String dateiname, EreignisJournal journal, long verzoegerung) {
+		this.dateiname = dateiname;
+		this.journal = journal;
+		this.verzoegerung = verzoegerung;
+	}
+
+	/**
+	 * Veranlasst das Kompaktieren der Logdatei nach der Verzoegerung.
+	 */
+	synchronized void anstossen() {
+		angestossen = true;
+		if (thread == null) {
+			// Der Thread wird erst gestartet, wenn es etwas zu kompaktieren gibt
+			thread = new Thread(this, "LogKompaktierer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Wartet auf einen Anstoss und kompaktiert dann die Logdatei.
+	 */
+	public void run() {
+		while (true) {
+			try {
+				synchronized (this) {
+					while (!angestossen)
+						wait();
+				}
+				Thread.sleep(verzoegerung);
+			} catch (InterruptedException e) {
+				return;
+			}
+			// Anstoesse waehrend des Kompaktierens fuehren zu einem weiteren Durchgang
+			synchronized (this) {
+				angestossen = false;
+			}
+			// Ein unerwarteter Fehler darf den Thread nicht beenden, sonst wuerde
+			// nach keinem weiteren Anstoss mehr kompaktiert
+			try {
+				kompaktieren();
+			} catch (Throwable t) {
+				System.err.println("Fehler beim Kompaktieren der Logdatei!");
+				t.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Kompaktiert die Logdatei sofort. Schlaegt das fehl, wird nach der
+	 * Verzoegerung ein neuer Versuch unternommen.
+	 */
+	void kompaktieren() {
+		boolean erfolgreich = false;
+		try {
+			journal.anhalten();
+			try {
+				erfolgreich = lpm.kompaktieren(dateiname);
+			} finally {
+				journal.fortsetzen();
+			}
+		} catch (IOException e) {
+			System.err.println("Fehler beim Kompaktieren der Logdatei!");
+			System.err.println(e.getMessage());
+		} finally {
+			if (!erfolgreich)
+				anstossen();
+		}
+	}
+
+}
@@ -22,9 +22,22 @@ import shop.server.persistence.data.ObjectDataPersistenceManager;
 public class MitarbeiterVerwaltung {
 	
 	private Vector<Mitarbeiter> mitarbeiterListe = new Vector<Mitarbeiter>();
+	// Index der Mitarbeiterliste nach ID Nummer
+	private IntHashMap<Mitarbeiter> mitarbeiterNachId = new IntHashMap<Mitarbeiter>();
 	
 	private DataPersistenceManager pm = new ObjectDataPersistenceManager();
 	
+	// gemeinsamer Index der Usernamen von Mitarbeitern und Kunden
+	private UsernameIndex usernamen;
+	
+	/**
+	 * Konstruktor der Mitarbeiterverwaltung.
+	 * @param usernamen Index der Usernamen, in den die Mitarbeiter eingetragen werden
+	 */
+	MitarbeiterVerwaltung(UsernameIndex usernamen) {
+		this.usernamen = usernamen;
+	}
+	
 	/**
 	 * Methode zum lesen der Mitarbeiterdaten aus einer externen Datenquelle
 	 * @param dateiName Dateiname der externen Datenquelle
@@ -73,9 +86,15 @@ public class MitarbeiterVerwaltung {
 	 * @param m Die Mitarbeiter-Instanz die zur Liste hinzugefuegt werden soll.
 	 * @throws MitarbeiterExistiertBereitsException	Wenn die ID der hinzuzufuegenden Mitarbeiter-Instanz schon einmal in der Liste existiert. 
 	 */
-	public void einfuegen(Mitarbeiter m) throws MitarbeiterExistiertBereitsException{
-		if(!mitarbeiterListe.contains(m)){
+	public synchronized void einfuegen(Mitarbeiter m) throws MitarbeiterExistiertBereitsException{
+		if(!mitarbeiterNachId.containsKey(m.getId())){
 			mitarbeiterListe.add(m);
+			mitarbeiterNachId.put(m.getId(), m);
+			if(!usernamen.eintragen(m)){
+				// nur bei alten Datendateien moeglich; beim Login entscheidet das Passwort
+				System.err.println("Username '" + m.getUsername() + "' von Mitarbeiter " + m.getId() + " ist bereits vergeben");
+				usernamen.doppeltEintragen(m);
+			}
 		}else{
 			throw new MitarbeiterExistiertBereitsException(m, "Fehler beim einfuegen!");
 		}
@@ -85,8 +104,11 @@ public class MitarbeiterVerwaltung {
 	 * Diese Methode loescht die angegebene Mitarbeiter Instanz aus der Liste.
 	 * @param m Mitarbeiter Instanz zum loeschen
 	 */
-	public void loeschen(Mitarbeiter m){
-		this.mitarbeiterListe.remove(m);
+	public synchronized void loeschen(Mitarbeiter m){
+		if(this.mitarbeiterListe.remove(m)){
+			mitarbeiterNachId.remove(m.getId());
+			usernamen.austragen(m);
+		}
 	}
 	
 	/**
@@ -95,17 +117,7 @@ public class MitarbeiterVerwaltung {
 	 * @return Die Mitarbeiter-Instanz mit der angegebenen ID Nummer, oder "null" wenn keine Instanz gefunden wurde.
 	 */
 	public Mitarbeiter sucheMitarbeiter(int id) throws MitarbeiterExistiertNichtException{
-		Mitarbeiter m = null;
-		
-		Iterator<Mitarbeiter> it = mitarbeiterListe.iterator();
-		
-		while(it.hasNext()){
-			Mitarbeiter tmp = it.next();
-			if(tmp.getId() == id){
-				m = tmp;
-				break;
-			}
-		}
+		Mitarbeiter m = mitarbeiterNachId.get(id);
 		
 		if(m == null){
 			throw new MitarbeiterExistiertNichtException(id, "");
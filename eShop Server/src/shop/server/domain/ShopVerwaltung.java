@@ -44,6 +44,8 @@ public class ShopVerwaltung implements ShopInterface{
 	private MitarbeiterVerwaltung meineMitarbeiter;
 	private KundenVerwaltung meineKunden;
 	private EreignisVerwaltung meineEreignisse;
+	// Usernamen aller Mitarbeiter und Kunden
+	private UsernameIndex usernamen = new UsernameIndex();
 	
 	private int mitarbeiterNextId;
 	private int kundenNextId;
@@ -65,15 +67,15 @@ public class ShopVerwaltung implements ShopInterface{
 		meineArtikel = new ArtikelVerwaltung();
 		meineArtikel.liesDaten(artikelDateiname);
 		
-		meineMitarbeiter = new MitarbeiterVerwaltung();
+		meineMitarbeiter = new MitarbeiterVerwaltung(usernamen);
 		meineMitarbeiter.liesDaten(mitarbeiterDateiname);
 		mitarbeiterNextId = meineMitarbeiter.getMitarbeiterListe().get(meineMitarbeiter.getMitarbeiterListe().size()-1).getId() + 1;
 		
-		meineKunden = new KundenVerwaltung();
+		meineKunden = new KundenVerwaltung(meineArtikel.getLagerbestand(), usernamen);
 		meineKunden.liesDaten(kundenDateiname);
 		kundenNextId = meineKunden.getKundenListe().get(meineKunden.getKundenListe().size()-1).getId() + 1;
 		
-		meineEreignisse = new EreignisVerwaltung();
+		meineEreignisse = new EreignisVerwaltung(logDateiname);
 	}
 	
 	// Artikel-Methoden
@@ -138,10 +140,98 @@ public class ShopVerwaltung implements ShopInterface{
 	
 	@Override
 	public void entferneArtikel(Mitarbeiter mitarbeiter, int artikelnummer) throws ArtikelExistiertNichtException, IOException {
-		meineEreignisse.entferneArtikelAusLog(artikelnummer, logDateiname);
+		meineEreignisse.entferneArtikelAusLog(mitarbeiter, artikelnummer, logDateiname);
 		meineArtikel.entfernen(artikelnummer);
 	}
 	
+	/**
+	 * Methode die den aktuellen Snapshot des Artikelbestands zurck gibt.
+	 * @return KatalogSnapshot
+	 */
+	public KatalogSnapshot gibKatalogSnapshot() {
+		return meineArtikel.getSnapshot();
+	}
+	
+	/**
+	 * Methode die zurck gibt, welche Artikel sich seit einer Version des
+	 * Artikelbestands gendert haben.
+	 * @param seitVersion
+	 * @return KatalogAenderungen
+	 */
+	public KatalogAenderungen gibKatalogAenderungen(long seitVersion) {
+		return meineArtikel.getAenderungenSeit(seitVersion);
+	}
+	
+	/**
+	 * Methode die die aktuelle Version des Artikelbestands zurck gibt.
+	 * @return Version
+	 */
+	public long gibKatalogVersion() {
+		return meineArtikel.getVersion();
+	}
+	
+	/**
+	 * Methode zum Anmelden eines Listeners fr nderungen am Artikelbestand.
+	 * @param l
+	 */
+	public void fuegeArtikelAenderungsListenerHinzu(ArtikelAenderungsListener l) {
+		meineArtikel.fuegeListenerHinzu(l);
+	}
+	
+	/**
+	 * Methode die eine Seite des Artikelbestands zurck gibt.
+	 * @param nachBezeichnung true fr die Sortierung nach Bezeichnung, sonst nach Artikelnummer
+	 * @param offset
+	 * @param limit
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> gibArtikelSeite(boolean nachBezeichnung, int offset, int limit) {
+		return meineArtikel.getArtikelSeite(nachBezeichnung, offset, limit);
+	}
+	
+	/**
+	 * Methode die die Artikel nach einer Artikelnummer zurck gibt (Blttern mit Cursor).
+	 * @param nachArtikelnummer
+	 * @param limit
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> gibArtikelNachArtikelnummer(int nachArtikelnummer, int limit) {
+		return meineArtikel.getArtikelNachArtikelnummer(nachArtikelnummer, limit);
+	}
+	
+	/**
+	 * Methode die die Artikel nach einer Bezeichnung zurck gibt (Blttern mit Cursor).
+	 * @param nachBezeichnung
+	 * @param nachArtikelnummer
+	 * @param limit
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> gibArtikelNachBezeichnung(String nachBezeichnung, int nachArtikelnummer, int limit) {
+		return meineArtikel.getArtikelNachBezeichnung(nachBezeichnung, nachArtikelnummer, limit);
+	}
+	
+	/**
+	 * Methode die die Artikel in einem Bereich von Artikelnummern zurck gibt.
+	 * @param von
+	 * @param bis
+	 * @param limit
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> gibArtikelImNummernbereich(int von, int bis, int limit) {
+		return meineArtikel.getArtikelImNummernbereich(von, bis, limit);
+	}
+	
+	/**
+	 * Methode die die Artikel in einem Preisbereich zurck gibt.
+	 * @param von
+	 * @param bis
+	 * @param limit
+	 * @return List<Artikel>
+	 */
+	public List<Artikel> gibArtikelImPreisbereich(double von, double bis, int limit) {
+		return meineArtikel.getArtikelImPreisbereich(von, bis, limit);
+	}
+	
 	@Override
 	public void schreibeArtikel() throws IOException {
 		meineArtikel.schreibeDaten(artikelDateiname);
@@ -173,7 +263,15 @@ public class ShopVerwaltung implements ShopInterface{
 			m = new Mitarbeiter(mitarbeiterNextId, username, passwort, name, funktion, gehalt);
 			mitarbeiterNextId++;
 		}
-		meineMitarbeiter.einfuegen(m);
+		// erst hier wird der Username verbindlich belegt, falls zwei Registrierungen gleichzeitig laufen
+		if (!usernamen.eintragen(m))
+			throw new UsernameExistiertBereitsException(username, " - in fuegeMitarbeiterHinzu() !");
+		try {
+			meineMitarbeiter.einfuegen(m);
+		} catch (MitarbeiterExistiertBereitsException e) {
+			usernamen.austragen(m);
+			throw e;
+		}
 	}
 
 	@Override
@@ -187,27 +285,15 @@ public class ShopVerwaltung implements ShopInterface{
 	}
 	
 	/**
-	 * Diese Methode iteriert zuerst durch die Mitarbeiterliste und dann durch die Kundenliste und 
-	 * vergleicht die Usernamen.
-	 * Beim ersten Treffer wird eine UsernameExistiertBereitsException geworfen.
+	 * Diese Methode sucht den Usernamen im gemeinsamen Index der Mitarbeiter und Kunden.
+	 * Ist er bereits vergeben, wird eine UsernameExistiertBereitsException geworfen.
 	 * @param username Username fr die neue Person.
 	 * @param zusatzMsg Zustliche Informationen.
 	 * @throws UsernameExistiertBereitsException
 	 */
 	public void existiertUsernameSchon(String username, String zusatzMsg) throws UsernameExistiertBereitsException{
-		
-		Iterator<Mitarbeiter> itM = meineMitarbeiter.getMitarbeiterListe().iterator();
-		while(itM.hasNext()){
-			if(itM.next().getUsername().equals(username)){
-				throw new UsernameExistiertBereitsException(username, zusatzMsg);
-			}
-		}
-		
-		Iterator<Kunde> itK = meineKunden.getKundenListe().iterator();
-		while(itK.hasNext()){
-			if(itK.next().getUsername().equals(username)){
-				throw new UsernameExistiertBereitsException(username, zusatzMsg);
-			}
+		if(usernamen.gibPerson(username) != null){
+			throw new UsernameExistiertBereitsException(username, zusatzMsg);
 		}
 	}
 	
@@ -254,7 +340,15 @@ public class ShopVerwaltung implements ShopInterface{
 			k = new Kunde(kundenNextId, username, passwort, name, strasse, plz, wohnort);
 			kundenNextId++;
 		}
-		meineKunden.einfuegen(k);
+		// erst hier wird der Username verbindlich belegt, falls zwei Registrierungen gleichzeitig laufen
+		if (!usernamen.eintragen(k))
+			throw new UsernameExistiertBereitsException(username, " - in fuegeKundenHinzu() !");
+		try {
+			meineKunden.einfuegen(k);
+		} catch (KundeExistiertBereitsException e) {
+			usernamen.austragen(k);
+			throw e;
+		}
 		
 	}
 	
@@ -303,16 +397,22 @@ public class ShopVerwaltung implements ShopInterface{
 	@Override
 	public void inDenWarenkorbLegen(Kunde kunde, int artikelnummer, int stueckzahl) throws ArtikelBestandIstZuKleinException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
 		meineKunden.inDenWarenkorbLegen(kunde, new WarenkorbArtikel(this.gibArtikel(artikelnummer), stueckzahl));
+		// Der Warenkorb veraendert den Bestand des Artikels direkt. Vermerkt wird
+		// nur eine erfolgreiche Aenderung, eine fehlgeschlagene Anfrage darf keine
+		// Aktualisierung aller Clients ausloesen
+		meineArtikel.aenderungVermerken(artikelnummer);
 	}
 	
 	@Override
 	public void ausDemWarenkorbHerausnehmen(Kunde kunde, int artikelnummer) throws ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
 		meineKunden.ausDemWarenkorbHerausnehmen(kunde, this.gibArtikel(artikelnummer));
+		meineArtikel.aenderungVermerken(artikelnummer);
 	}
 	
 	@Override
 	public void stueckzahlAendern(Kunde kunde, int warenkorbArtikelnummer, int neueStueckzahl) throws ArtikelBestandIstZuKleinException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
 		meineKunden.stueckzahlAendern(kunde, this.gibWarenkorbArtikel(kunde, this.gibArtikel(warenkorbArtikelnummer)), neueStueckzahl);
+		meineArtikel.aenderungVermerken(warenkorbArtikelnummer);
 	}
 	
 	@Override
@@ -333,7 +433,12 @@ public class ShopVerwaltung implements ShopInterface{
 	
 	@Override
 	public void leeren(Kunde k) throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		List<WarenkorbArtikel> warenkorb = new Vector<WarenkorbArtikel>(k.getWarenkorb());
 		meineKunden.leeren(k);
+		Iterator<WarenkorbArtikel> iter = warenkorb.iterator();
+		while (iter.hasNext()) {
+			meineArtikel.aenderungVermerken(iter.next().getArtikel().getArtikelnummer());
+		}
 	}
 	
 	// Ereignis-Methoden
@@ -368,36 +473,11 @@ public class ShopVerwaltung implements ShopInterface{
 	 * @return Person p
 	 */
 	public Person pruefeLogin(String username, String password) {
-		Iterator<Mitarbeiter> itM = meineMitarbeiter.getMitarbeiterListe().iterator();
-		Person p = null;
-		while (itM.hasNext()) {
-			p = itM.next();
-			if (((String) p.getUsername()).equals(username) && ((String) p.getPasswort()).equals(password)) {
-				return p;
-			}
-		}
-		Iterator<Kunde> itK = meineKunden.getKundenListe().iterator();
-		while (itK.hasNext()) {
-			p = itK.next();
-			if (((String) p.getUsername()).equals(username) && ((String) p.getPasswort()).equals(password)) {
-				return p;
-			}
-		}
-		return null;
+		return usernamen.gibPerson(username, password);
 	}
 	
 	public Kunde loginVergessen(String name, String strasse, int zip, String wohnort){
-		Kunde result = null;
-		Iterator<Kunde> itK = meineKunden.getKundenListe().iterator();
-		while(itK.hasNext()){
-			Kunde k = itK.next();
-			if(k.getName().equals(name) && k.getStrasse().equals(strasse) && k.getPlz() == zip && k.getWohnort().equals(wohnort)){
-				result = k;
-				break;
-			}
-		}
-		
-		return result;
+		return meineKunden.sucheKunde(name, strasse, zip, wohnort);
 	}
 	
 	public void disconnect() throws IOException {
@@ -0,0 +1,109 @@
+package shop.server.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Invertierter Index ueber die Trigramme (Folgen von drei Zeichen) der
+ * Artikelbezeichnungen.
+ *
+ * Zu jedem Trigramm wird die Menge der Artikelnummern gefuehrt, in deren
+ * Bezeichnung es vorkommt. Fuer eine Suchanfrage werden die Mengen aller
+ * Trigramme der Anfrage geschnitten. Das Ergebnis sind Kandidaten, die der
+ * Aufrufer noch mit contains() pruefen muss, da die Trigramme auch in anderer
+ * Reihenfolge vorkommen koennen. Gross- und Kleinschreibung wird nicht
+ * unterschieden.
+ */
+class TrigrammIndex {
+
+	// Anfragen, die kuerzer sind, koennen nicht ueber den Index beantwortet werden
+	static final int MIN_LAENGE = 3;
+
+	private Map<String, Set<Integer>> postings = new HashMap<String, Set<Integer>>();
+
+	/**
+	 * Methode zum Aufnehmen einer Bezeichnung in den Index.
+	 *
+	 * @param artikelnummer
+	 * @param bezeichnung
+	 */
+	synchronized void hinzufuegen(int artikelnummer, String bezeichnung) {
+		for (String trigramm : trigramme(bezeichnung)) {
+			Set<Integer> nummern = postings.get(trigramm);
+			if (nummern == null) {
+				nummern = new HashSet<Integer>();
+				postings.put(trigramm, nummern);
+			}
+			nummern.add(artikelnummer);
+		}
+	}
+
+	/**
+	 * Methode zum Entfernen einer Bezeichnung aus dem Index. Es muss dieselbe
+	 * Bezeichnung uebergeben werden, mit der der Artikel aufgenommen wurde.
+	 *
+	 * @param artikelnummer
+	 * @param bezeichnung
+	 */
+	synchronized void entfernen(int artikelnummer, String bezeichnung) {
+		for (String trigramm : trigramme(bezeichnung)) {
+			Set<Integer> nummern = postings.get(trigramm);
+			if (nummern != null) {
+				nummern.remove(artikelnummer);
+				if (nummern.isEmpty())
+					postings.remove(trigramm);
+			}
+		}
+	}
+
+	/**
+	 * Methode die die Artikelnummern zurueck gibt, deren Bezeichnung alle
+	 * Trigramme der Anfrage enthaelt. Die Anfrage muss mindestens MIN_LAENGE
+	 * Zeichen lang sein.
+	 *
+	 * @param anfrage
+	 * @return Kandidaten fuer die Suche
+	 */
+	synchronized List<Integer> kandidaten(String anfrage) {
+		List<Set<Integer>> listen = new ArrayList<Set<Integer>>();
+		for (String trigramm : trigramme(anfrage)) {
+			Set<Integer> nummern = postings.get(trigramm);
+			if (nummern == null)
+				return new ArrayList<Integer>();
+			listen.add(nummern);
+		}
+
+		// mit der kuerzesten Liste beginnen, die anderen werden nur noch abgefragt
+		Collections.sort(listen, new Comparator<Set<Integer>>() {
+			public int compare(Set<Integer> a, Set<Integer> b) {
+				return a.size() - b.size();
+			}
+		});
+
+		List<Integer> ergebnis = new ArrayList<Integer>();
+		naechste: for (Integer nummer : listen.get(0)) {
+			for (int i = 1; i < listen.size(); i++) {
+				if (!listen.get(i).contains(nummer))
+					continue naechste;
+			}
+			ergebnis.add(nummer);
+		}
+		return ergebnis;
+	}
+
+	private static Set<String> trigramme(String text) {
+		String t = text.toLowerCase();
+		Set<String> ergebnis = new HashSet<String>();
+		for (int i = 0; i + MIN_LAENGE <= t.length(); i++) {
+			ergebnis.add(t.substring(i, i + MIN_LAENGE));
+		}
+		return ergebnis;
+	}
+
+}
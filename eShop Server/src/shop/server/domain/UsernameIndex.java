@@ -0,0 +1,110 @@
+package shop.server.domain;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import shop.common.valueobjects.Person;
+
+/**
+ * Gemeinsamer Index aller Usernamen von Mitarbeitern und Kunden.
+ *
+ * Wird von der MitarbeiterVerwaltung und der KundenVerwaltung beim Einfuegen
+ * und Loeschen gepflegt, damit Login und Pruefung auf doppelte Usernamen ohne
+ * Durchsuchen der Listen auskommen. Ein Username kann nur einmal eingetragen
+ * werden, auch wenn zwei Registrierungen gleichzeitig stattfinden.
+ *
+ * Alte Datendateien koennen denselben Usernamen mehrfach enthalten. Diese
+ * Personen werden beim Laden zusaetzlich als doppelt eingetragen, beim Login
+ * wird wie frueher die erste Person mit passendem Passwort gefunden.
+ */
+class UsernameIndex {
+
+	private ConcurrentMap<String, Person> personen = new ConcurrentHashMap<String, Person>();
+	// weitere Personen mit einem bereits vergebenen Usernamen, in der Reihenfolge des Ladens
+	private ConcurrentMap<String, List<Person>> doppelte = new ConcurrentHashMap<String, List<Person>>();
+
+	/**
+	 * Traegt den Usernamen einer Person ein, sofern er noch frei ist.
+	 *
+	 * @param p
+	 * @return true, wenn der Username frei war oder bereits dieser Person gehoert
+	 */
+	boolean eintragen(Person p) {
+		Person vorhanden = personen.putIfAbsent(p.getUsername(), p);
+		return vorhanden == null || vorhanden == p;
+	}
+
+	/**
+	 * Traegt den Usernamen einer Person wieder aus. Gehoert der Username
+	 * inzwischen einer anderen Person, bleibt er eingetragen.
+	 *
+	 * @param p
+	 */
+	synchronized void austragen(Person p) {
+		List<Person> weitere = doppelte.get(p.getUsername());
+		if (weitere != null) {
+			for (Person d : weitere) {
+				if (gleich(d, p))
+					weitere.remove(d);
+			}
+		}
+		Person vorhanden = personen.get(p.getUsername());
+		if (vorhanden != null && gleich(vorhanden, p) && personen.remove(p.getUsername(), vorhanden)) {
+			// die naechste doppelt eingetragene Person uebernimmt den Usernamen
+			if (weitere != null && !weitere.isEmpty() && personen.putIfAbsent(p.getUsername(), weitere.get(0)) == null)
+				weitere.remove(0);
+		}
+		if (weitere != null && weitere.isEmpty())
+			doppelte.remove(p.getUsername(), weitere);
+	}
+
+	/**
+	 * Traegt eine Person ein, deren Username beim Laden bereits vergeben war.
+	 * Sie kann sich weiterhin anmelden, sofern ihr Passwort von dem der
+	 * anderen Personen abweicht.
+	 *
+	 * @param p
+	 */
+	synchronized void doppeltEintragen(Person p) {
+		List<Person> weitere = doppelte.get(p.getUsername());
+		if (weitere == null) {
+			weitere = new CopyOnWriteArrayList<Person>();
+			doppelte.put(p.getUsername(), weitere);
+		}
+		weitere.add(p);
+	}
+
+	/**
+	 * @param username
+	 * @return Person mit diesem Usernamen oder null
+	 */
+	Person gibPerson(String username) {
+		return personen.get(username);
+	}
+
+	/**
+	 * @param username
+	 * @param passwort
+	 * @return erste Person mit diesem Usernamen und Passwort oder null
+	 */
+	Person gibPerson(String username, String passwort) {
+		Person p = personen.get(username);
+		if (p != null && ((String) p.getPasswort()).equals(passwort))
+			return p;
+		List<Person> weitere = doppelte.get(username);
+		if (weitere != null) {
+			for (Person d : weitere) {
+				if (((String) d.getPasswort()).equals(passwort))
+					return d;
+			}
+		}
+		return null;
+	}
+
+	private static boolean gleich(Person a, Person b) {
+		return a.getPersonTyp() == b.getPersonTyp() && a.getId() == b.getId();
+	}
+
+}
@@ -3,6 +3,8 @@ package shop.server.domain;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
 import shop.common.exceptions.ArtikelBestandIstZuKleinException;
@@ -15,10 +17,55 @@ import shop.common.valueobjects.WarenkorbArtikel;
 /**
  * Klasse zur Verwaltung vom Warenkorb.
  * 
+ * Alle Aenderungen am Warenkorb eines Kunden werden ueber den Kunden
+ * synchronisiert, die Warenkoerbe verschiedener Kunden blockieren sich also
+ * nicht gegenseitig. Die Bestaende der Artikel werden ueber den Lagerbestand
+ * ohne gemeinsame Sperre veraendert.
+ * 
+ * Artikel im Warenkorb werden ueber einen Index je Kunde in konstanter Zeit
+ * gefunden. Nur entfernen() braucht linear viel Zeit in der Groesse des
+ * Warenkorbs, da der Artikel aus der Liste des Kunden genommen wird, deren
+ * Reihenfolge erhalten bleiben muss. Die Groesse eines Warenkorbs ist aber
+ * unabhaengig von der Anzahl der Kunden.
+ * 
  * @author Christof Ferreira Torres
  */
 public class WarenkorbVerwaltung {
 	
+	// Bestaende der Artikel, von denen die Stueckzahlen im Warenkorb reserviert werden
+	private Lagerbestand lager;
+	// Index je Kunde von der Artikelnummer auf den Warenkorb Artikel; die
+	// Reihenfolge des Warenkorbs bestimmt weiterhin die Liste des Kunden
+	private ConcurrentMap<Kunde, Index> indizes = new ConcurrentHashMap<Kunde, Index>();
+	
+	/**
+	 * Index auf den Warenkorb eines Kunden. Er gilt nur fuer die Liste, aus der
+	 * er aufgebaut wurde, und wird bei jeder Aenderung dieser Liste mitgefuehrt.
+	 */
+	private static class Index {
+		final List<WarenkorbArtikel> warenkorb;
+		final IntHashMap<WarenkorbArtikel> nachArtikelnummer;
+		
+		Index(List<WarenkorbArtikel> warenkorb) {
+			this.warenkorb = warenkorb;
+			nachArtikelnummer = new IntHashMap<WarenkorbArtikel>(warenkorb.size());
+			Iterator<WarenkorbArtikel> iter = warenkorb.iterator();
+			while (iter.hasNext()) {
+				WarenkorbArtikel warenkorbArtikel = iter.next();
+				nachArtikelnummer.put(warenkorbArtikel.getArtikel().getArtikelnummer(), warenkorbArtikel);
+			}
+		}
+	}
+	
+	/**
+	 * Konstruktor der Warenkorbverwaltung.
+	 * 
+	 * @param lager Bestaende der Artikel
+	 */
+	WarenkorbVerwaltung(Lagerbestand lager) {
+		this.lager = lager;
+	}
+	
 	/**
 	 * Synchronisierte methode zum hinzufuegen eines Warenkorb Artikels in den Warenkorb.
 	 * 
@@ -28,16 +75,16 @@ public class WarenkorbVerwaltung {
 	 * @throws ArtikelExistiertNichtException 
 	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException 
 	 */
-	public synchronized void hinzufuegen(Kunde kunde, WarenkorbArtikel warenkorbArtikel) throws ArtikelBestandIstZuKleinException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {	
-		if (kunde.getWarenkorb().contains(warenkorbArtikel)) {
-			this.stueckzahlAendern(kunde, warenkorbArtikel, kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getStueckzahl() + warenkorbArtikel.getStueckzahl());
-		} else {
-			int alterBestand = warenkorbArtikel.getArtikel().getBestand();
-			if (alterBestand - warenkorbArtikel.getStueckzahl() >= 0) {
-				warenkorbArtikel.getArtikel().setBestand(alterBestand - warenkorbArtikel.getStueckzahl());
-				kunde.getWarenkorb().add(warenkorbArtikel);
+	public void hinzufuegen(Kunde kunde, WarenkorbArtikel warenkorbArtikel) throws ArtikelBestandIstZuKleinException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		synchronized (kunde) {
+			IntHashMap<WarenkorbArtikel> index = gibIndex(kunde);
+			WarenkorbArtikel imWarenkorb = index.get(warenkorbArtikel.getArtikel().getArtikelnummer());
+			if (imWarenkorb != null) {
+				this.stueckzahlAendern(kunde, imWarenkorb, imWarenkorb.getStueckzahl() + warenkorbArtikel.getStueckzahl());
 			} else {
-				throw new ArtikelBestandIstZuKleinException(kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getArtikel(), " - in 'stueckzahlAendern()'");
+				lager.reservieren(warenkorbArtikel.getArtikel(), warenkorbArtikel.getStueckzahl());
+				kunde.getWarenkorb().add(warenkorbArtikel);
+				index.put(warenkorbArtikel.getArtikel().getArtikelnummer(), warenkorbArtikel);
 			}
 		}
 	}
@@ -52,23 +99,20 @@ public class WarenkorbVerwaltung {
 	 * @throws ArtikelExistiertNichtException 
 	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException 
 	 */
-	public synchronized void stueckzahlAendern(Kunde kunde, WarenkorbArtikel warenkorbArtikel, int neueStueckzahl) throws ArtikelBestandIstZuKleinException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
-		if (kunde.getWarenkorb().contains(warenkorbArtikel)) {
-			int alterBestand = kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getArtikel().getBestand();
-			int alteStueckzahl = kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getStueckzahl();
-			if (alteStueckzahl < neueStueckzahl) {
-				if (alterBestand - (neueStueckzahl - alteStueckzahl) >= 0) {
-					kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getArtikel().setBestand(alterBestand - (neueStueckzahl - alteStueckzahl));
-					kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).setStueckzahl(neueStueckzahl);
+	public void stueckzahlAendern(Kunde kunde, WarenkorbArtikel warenkorbArtikel, int neueStueckzahl) throws ArtikelBestandIstZuKleinException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		synchronized (kunde) {
+			WarenkorbArtikel imWarenkorb = gibIndex(kunde).get(warenkorbArtikel.getArtikel().getArtikelnummer());
+			if (imWarenkorb != null) {
+				int alteStueckzahl = imWarenkorb.getStueckzahl();
+				if (alteStueckzahl < neueStueckzahl) {
+					lager.reservieren(imWarenkorb.getArtikel(), neueStueckzahl - alteStueckzahl);
 				} else {
-					throw new ArtikelBestandIstZuKleinException(kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getArtikel(), " - in 'stueckzahlAendern()'");
+					lager.freigeben(imWarenkorb.getArtikel(), alteStueckzahl - neueStueckzahl);
 				}
+				imWarenkorb.setStueckzahl(neueStueckzahl);
 			} else {
-				kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getArtikel().setBestand(alterBestand + (alteStueckzahl - neueStueckzahl));
-				kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).setStueckzahl(neueStueckzahl);
+				throw new ArtikelExistiertNichtException(warenkorbArtikel.getArtikel(), " - in 'stueckzahlAendern()'");
 			}
-		} else {
-			throw new ArtikelExistiertNichtException(warenkorbArtikel.getArtikel(), " - in 'stueckzahlAendern()'");
 		}
 	}
 	
@@ -80,12 +124,19 @@ public class WarenkorbVerwaltung {
 	 * @throws ArtikelExistiertNichtException 
 	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException 
 	 */
-	public synchronized void entfernen(Kunde kunde, WarenkorbArtikel warenkorbArtikel) throws ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
-		if (kunde.getWarenkorb().contains(warenkorbArtikel)) {
-			kunde.getWarenkorb().get(kunde.getWarenkorb().indexOf(warenkorbArtikel)).getArtikel().setBestand(warenkorbArtikel.getArtikel().getBestand() + warenkorbArtikel.getStueckzahl());
-			kunde.getWarenkorb().remove(warenkorbArtikel);
-		} else {
-			throw new ArtikelExistiertNichtException(warenkorbArtikel.getArtikel(), " - in 'entfernen()'");
+	public void entfernen(Kunde kunde, WarenkorbArtikel warenkorbArtikel) throws ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		synchronized (kunde) {
+			IntHashMap<WarenkorbArtikel> index = gibIndex(kunde);
+			WarenkorbArtikel imWarenkorb = index.get(warenkorbArtikel.getArtikel().getArtikelnummer());
+			if (imWarenkorb != null) {
+				lager.freigeben(imWarenkorb.getArtikel(), imWarenkorb.getStueckzahl());
+				kunde.getWarenkorb().remove(imWarenkorb);
+				index.remove(imWarenkorb.getArtikel().getArtikelnummer());
+				if (index.size() == 0)
+					indizes.remove(kunde);
+			} else {
+				throw new ArtikelExistiertNichtException(warenkorbArtikel.getArtikel(), " - in 'entfernen()'");
+			}
 		}
 	}
 	
@@ -97,15 +148,18 @@ public class WarenkorbVerwaltung {
 	 * @throws WarenkorbIstLeerException 
 	 */
 	public List<WarenkorbArtikel> kaufen(Kunde kunde) throws WarenkorbIstLeerException {
-		if (kunde.getWarenkorb().isEmpty())
-			throw new WarenkorbIstLeerException(" - in 'kaufen()'");
-		List<WarenkorbArtikel> ergebnis = new Vector<WarenkorbArtikel>();
-		Iterator<WarenkorbArtikel> iter = kunde.getWarenkorb().iterator();
-		while (iter.hasNext()) {
-			ergebnis.add(iter.next());
+		synchronized (kunde) {
+			if (kunde.getWarenkorb().isEmpty())
+				throw new WarenkorbIstLeerException(" - in 'kaufen()'");
+			List<WarenkorbArtikel> ergebnis = new Vector<WarenkorbArtikel>();
+			Iterator<WarenkorbArtikel> iter = kunde.getWarenkorb().iterator();
+			while (iter.hasNext()) {
+				ergebnis.add(iter.next());
+			}
+			kunde.getWarenkorb().clear();
+			indizes.remove(kunde);
+			return ergebnis;
 		}
-		kunde.getWarenkorb().clear();
-		return ergebnis;
 	}
 	
 	/**
@@ -114,13 +168,16 @@ public class WarenkorbVerwaltung {
 	 * @param kunde Der Kunde der seinen Warenkorb leeren will.
 	 * @throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException 
 	 */
-	public synchronized void leeren(Kunde kunde) throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
-		Iterator<WarenkorbArtikel> iter = kunde.getWarenkorb().iterator();
-		while (iter.hasNext()) {
-			WarenkorbArtikel warenkorbArtikel = iter.next();
-			warenkorbArtikel.getArtikel().setBestand(warenkorbArtikel.getArtikel().getBestand() + warenkorbArtikel.getStueckzahl());
+	public void leeren(Kunde kunde) throws ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		synchronized (kunde) {
+			Iterator<WarenkorbArtikel> iter = kunde.getWarenkorb().iterator();
+			while (iter.hasNext()) {
+				WarenkorbArtikel warenkorbArtikel = iter.next();
+				lager.freigeben(warenkorbArtikel.getArtikel(), warenkorbArtikel.getStueckzahl());
+			}
+			kunde.getWarenkorb().clear();
+			indizes.remove(kunde);
 		}
-		kunde.getWarenkorb().clear();
 	}
 
 	/**
@@ -132,19 +189,43 @@ public class WarenkorbVerwaltung {
 	 * @throws ArtikelExistiertNichtException 
 	 */ 
 	public WarenkorbArtikel getWarenkorbArtikel(Kunde kunde, Artikel artikel) throws ArtikelExistiertNichtException {
-		int index = -1;
-
-		Iterator<WarenkorbArtikel> iter = kunde.getWarenkorb().iterator();
-		while (iter.hasNext()) {
-			WarenkorbArtikel warenkorbArtikel = iter.next();
-			if (warenkorbArtikel.getArtikel().equals(artikel))
-				index = kunde.getWarenkorb().indexOf(warenkorbArtikel);
+		synchronized (kunde) {
+			WarenkorbArtikel warenkorbArtikel = gibIndex(kunde).get(artikel.getArtikelnummer());
+			if (warenkorbArtikel != null)
+				return warenkorbArtikel;
+			else
+				throw new ArtikelExistiertNichtException(artikel, " - in 'getWarenkorbArtikel()'");
 		}
-		
-		if (index != -1)
-			return kunde.getWarenkorb().get(index);
-		else
-			throw new ArtikelExistiertNichtException(artikel, " - in 'getWarenkorbArtikel()'");
+	}
+	
+	/**
+	 * Methode zum verwerfen des Index eines Kunden, z.B. wenn der Kunde
+	 * geloescht wird.
+	 * 
+	 * @param kunde
+	 */
+	void vergessen(Kunde kunde) {
+		synchronized (kunde) {
+			indizes.remove(kunde);
+		}
+	}
+	
+	/**
+	 * Methode die den Index des Warenkorbs eines Kunden zurueck gibt. Gehoert der
+	 * Index nicht zur aktuellen Liste des Kunden (z.B. weil der Warenkorb neu
+	 * gesetzt wurde), wird er neu aufgebaut. Muss unter der Sperre des Kunden
+	 * aufgerufen werden.
+	 * 
+	 * @param kunde
+	 * @return Index von der Artikelnummer auf den Warenkorb Artikel
+	 */
+	private IntHashMap<WarenkorbArtikel> gibIndex(Kunde kunde) {
+		Index index = indizes.get(kunde);
+		if (index == null || index.warenkorb != kunde.getWarenkorb()) {
+			index = new Index(kunde.getWarenkorb());
+			indizes.put(kunde, index);
+		}
+		return index.nachArtikelnummer;
 	}
 	
 }
@@ -0,0 +1,367 @@
+package shop.server.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shop.server.domain.ArtikelAenderungsListener;
+import shop.server.domain.ShopVerwaltung;
+
+/**
+ * Klasse zur Benachrichtigung der Clients ueber Aenderungen am Artikelbestand.
+ * 
+ * Clients abonnieren die Benachrichtigungen, indem sie sich mit dem Update-Port
+ * des Servers verbinden. Nach jeder Aenderung erhalten sie eine Nachricht
+ *   uat
+ *   Version des Artikelbestands
+ *   Anzahl N der geaenderten Artikel (-1: ganzen Artikelbestand neu laden)
+ *   N Zeilen mit je einer Artikelnummer
+ * und koennen die geaenderten Artikel danach mit "gaa" abholen. Direkt nach
+ * dem Verbindungsaufbau wird eine Nachricht ohne Artikel mit der aktuellen
+ * Version gesendet. Sind bereits maxAbonnenten verbunden, erhaelt ein neuer
+ * Abonnent wie auf dem Hauptport die Antwort "ServerBusy" und die Verbindung
+ * wird geschlossen.
+ * 
+ * Alle Abonnenten werden von einem einzigen Thread ueber einen Selector
+ * bedient. Eine Aenderung wird vom aendernden Thread nur in eine Warteschlange
+ * gestellt; erst der Selector-Thread verteilt sie auf die Abonnenten, so dass
+ * die Anzahl der Abonnenten eine Aenderung nicht verlangsamt. Solange eine
+ * Nachricht an einen Abonnenten noch nicht geschrieben ist, werden weitere
+ * Aenderungen fuer ihn gesammelt und mit der naechsten Nachricht zusammen
+ * gesendet. Werden dabei mehr als MAX_VORGEMERKT Artikel
+ * gesammelt, wird statt der Artikelnummern nur noch "ganzen Artikelbestand neu
+ * laden" gemeldet. Ein langsamer Abonnent haelt somit weder die Aenderung
+ * noch die anderen Abonnenten auf und belegt nur begrenzt Speicher.
+ */
+class AboVerteiler implements Runnable, ArtikelAenderungsListener {
+
+	// Kennzeichen der Nachricht (U)pdate(A)rtikel(T)able
+	static final String AKTUALISIERUNG = "uat";
+	// Hoechstzahl gesammelter Artikelnummern je Abonnent
+	static final int MAX_VORGEMERKT = 256;
+
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private ShopVerwaltung shop;
+	private int maxAbonnenten;
+
+	private Set<Abonnent> abonnenten = new CopyOnWriteArraySet<Abonnent>();
+	// Aenderungen, die der Selector-Thread noch nicht verteilt hat
+	private Queue<Aenderung> aenderungen = new ConcurrentLinkedQueue<Aenderung>();
+	private AtomicBoolean geweckt = new AtomicBoolean(false);
+	private ByteBuffer lesePuffer = ByteBuffer.allocate(256);
+
+	private AtomicInteger anzahlAbonnenten = new AtomicInteger(0);
+	private AtomicLong gesendeteNachrichten = new AtomicLong(0);
+	private AtomicLong zusammengefassteAenderungen = new AtomicLong(0);
+	private AtomicLong ueberlaeufe = new AtomicLong(0);
+	private AtomicLong abgewiesen = new AtomicLong(0);
+
+	/**
+	 * Konstruktor des Verteilers. Der Verteiler meldet sich bei der
+	 * Shopverwaltung fuer Aenderungen am Artikelbestand an; gestartet wird er
+	 * als eigener Thread.
+	 * 
+	 * @param serverChannel bereits gebundener Kanal des Update-Ports
+	 * @param shop
+	 * @param maxAbonnenten maximale Anzahl gleichzeitiger Abonnenten
+	 * @throws IOException
+	 */
+	AboVerteiler(ServerSocketChannel serverChannel, ShopVerwaltung shop, int maxAbonnenten) throws IOException {
+		this.serverChannel = serverChannel;
+		this.shop = shop;
+		this.maxAbonnenten = maxAbonnenten;
+		selector = Selector.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		shop.fuegeArtikelAenderungsListenerHinzu(this);
+	}
+
+	/**
+	 * Stellt die Aenderung fuer den Selector-Thread in die Warteschlange. Wird
+	 * unter der Sperre der ArtikelVerwaltung aufgerufen und tut deshalb nicht mehr.
+	 */
+	public void artikelGeaendert(long version, int artikelnummer) {
+		// Neue Abonnenten erhalten beim Verbindungsaufbau ohnehin die aktuelle Version
+		if (anzahlAbonnenten.get() == 0)
+			return;
+		aenderungen.add(new Aenderung(version, artikelnummer));
+		if (geweckt.compareAndSet(false, true))
+			selector.wakeup();
+	}
+
+	/**
+	 * Selector-Schleife des Verteilers.
+	 */
+	public void run() {
+		while (true) {
+			try {
+				selector.select();
+				geweckt.set(false);
+
+				Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = iter.next();
+					iter.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						try {
+							annehmen();
+						} catch (IOException e) {
+							System.err.println("Fehler beim Annehmen eines Abonnenten: " + e);
+						}
+						continue;
+					}
+					Abonnent a = (Abonnent) key.attachment();
+					try {
+						if (key.isReadable())
+							a.lesen();
+						if (key.isValid() && key.isWritable())
+							a.schreiben();
+					} catch (IOException e) {
+						a.abmelden();
+					} catch (RuntimeException e) {
+						// z.B. CancelledKeyException: nur dieser Abonnent ist betroffen
+						System.err.println("Fehler beim Bedienen eines Abonnenten: " + e);
+						a.abmelden();
+					}
+				}
+
+				for (Abonnent a : verteilen()) {
+					try {
+						a.schreiben();
+					} catch (IOException e) {
+						a.abmelden();
+					} catch (RuntimeException e) {
+						System.err.println("Fehler beim Bedienen eines Abonnenten: " + e);
+						a.abmelden();
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Fehler im AboVerteiler: " + e);
+			} catch (RuntimeException e) {
+				// Der Verteiler ist der einzige Thread, der Aktualisierungen sendet
+				System.err.println("Fehler im AboVerteiler: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Verteilt die wartenden Aenderungen auf die Abonnenten.
+	 * 
+	 * @return Abonnenten, fuer die eine neue Nachricht zu senden ist
+	 */
+	private List<Abonnent> verteilen() {
+		List<Abonnent> bereit = new ArrayList<Abonnent>();
+		Aenderung aenderung;
+		while ((aenderung = aenderungen.poll()) != null) {
+			for (Abonnent a : abonnenten) {
+				if (a.vormerken(aenderung.version, aenderung.artikelnummer))
+					bereit.add(a);
+			}
+		}
+		return bereit;
+	}
+
+	private void annehmen() throws IOException {
+		SocketChannel kanal = serverChannel.accept();
+		if (kanal == null)
+			return;
+		if (anzahlAbonnenten.get() >= maxAbonnenten) {
+			abweisen(kanal);
+			return;
+		}
+		kanal.configureBlocking(false);
+		SelectionKey key = kanal.register(selector, SelectionKey.OP_READ);
+		Abonnent a = new Abonnent(kanal, key, shop.gibKatalogVersion());
+		key.attach(a);
+		abonnenten.add(a);
+		anzahlAbonnenten.incrementAndGet();
+		a.schreiben();
+	}
+
+	/**
+	 * Sendet einem Abonnenten ueber der Hoechstzahl "ServerBusy" und schlieszt
+	 * die Verbindung. Die Antwort passt in den Sendepuffer einer neuen
+	 * Verbindung; was nicht sofort geschrieben werden kann, entfaellt.
+	 * 
+	 * @param kanal
+	 */
+	private void abweisen(SocketChannel kanal) {
+		abgewiesen.incrementAndGet();
+		System.err.println("Abonnent " + kanal.socket().getRemoteSocketAddress() + " abgewiesen (" + maxAbonnenten + " Abonnenten verbunden)");
+		try {
+			kanal.configureBlocking(false);
+			kanal.write(ByteBuffer.wrap((Zulassungskontrolle.SERVER_BUSY + "\n").getBytes()));
+		} catch (IOException e) {
+			System.err.println("Ausnahme beim Abweisen des Abonnenten: " + e);
+		} finally {
+			try {
+				kanal.close();
+			} catch (IOException e) {
+				System.err.println("Ausnahme bei Schliessung des Kanals: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Gibt die Kennzahlen des Verteilers zurueck.
+	 * 
+	 * @return Kennzahlen nach Namen
+	 */
+	Map<String, Number> gibKennzahlen() {
+		Map<String, Number> kennzahlen = new LinkedHashMap<String, Number>();
+		kennzahlen.put("abonnenten", anzahlAbonnenten.get());
+		kennzahlen.put("gesendeteAktualisierungen", gesendeteNachrichten.get());
+		kennzahlen.put("zusammengefassteAenderungen", zusammengefassteAenderungen.get());
+		kennzahlen.put("aktualisierungsUeberlaeufe", ueberlaeufe.get());
+		kennzahlen.put("abgewieseneAbonnenten", abgewiesen.get());
+		return kennzahlen;
+	}
+
+	/**
+	 * Eine Aenderung, die noch nicht auf die Abonnenten verteilt ist.
+	 */
+	private static class Aenderung {
+		final long version;
+		final int artikelnummer;
+
+		Aenderung(long version, int artikelnummer) {
+			this.version = version;
+			this.artikelnummer = artikelnummer;
+		}
+	}
+
+	/**
+	 * Ein Abonnent mit den fuer ihn gesammelten Aenderungen. Er wird nur im
+	 * Selector-Thread benutzt.
+	 */
+	private class Abonnent {
+
+		private SocketChannel kanal;
+		private SelectionKey key;
+
+		// gesammelte Aenderungen
+		private long version;
+		private Set<Integer> vorgemerkt = new LinkedHashSet<Integer>();
+		private boolean ueberlauf = false;
+		private boolean eingereiht = true;
+
+		// Nachricht, die gerade geschrieben wird
+		private ByteBuffer nachricht = null;
+
+		Abonnent(SocketChannel kanal, SelectionKey key, long version) {
+			this.kanal = kanal;
+			this.key = key;
+			this.version = version;
+		}
+
+		/**
+		 * Merkt eine Aenderung vor.
+		 * 
+		 * @return true, wenn der Abonnent zum Senden eingereiht werden muss
+		 */
+		boolean vormerken(long neueVersion, int artikelnummer) {
+			version = neueVersion;
+			if (!ueberlauf) {
+				if (!vorgemerkt.add(artikelnummer))
+					zusammengefassteAenderungen.incrementAndGet();
+				if (vorgemerkt.size() > MAX_VORGEMERKT) {
+					ueberlauf = true;
+					vorgemerkt.clear();
+					ueberlaeufe.incrementAndGet();
+				}
+			} else {
+				zusammengefassteAenderungen.incrementAndGet();
+			}
+			if (eingereiht)
+				return false;
+			eingereiht = true;
+			return true;
+		}
+
+		/**
+		 * Entnimmt die gesammelten Aenderungen als Nachricht.
+		 * 
+		 * @return Nachricht, oder null wenn keine Aenderungen vorliegen
+		 */
+		private ByteBuffer entnehmen() {
+			if (!eingereiht)
+				return null;
+			StringBuilder text = new StringBuilder();
+			text.append(AKTUALISIERUNG).append('\n');
+			text.append(version).append('\n');
+			text.append(ueberlauf ? -1 : vorgemerkt.size()).append('\n');
+			for (Integer artikelnummer : vorgemerkt) {
+				text.append(artikelnummer).append('\n');
+			}
+			vorgemerkt.clear();
+			ueberlauf = false;
+			eingereiht = false;
+			return ByteBuffer.wrap(text.toString().getBytes());
+		}
+
+		/**
+		 * Schreibt die aktuelle und ggf. weitere Nachrichten, solange dies
+		 * ohne Blockieren moeglich ist.
+		 */
+		void schreiben() throws IOException {
+			while (true) {
+				if (nachricht == null || !nachricht.hasRemaining()) {
+					nachricht = entnehmen();
+					if (nachricht == null) {
+						key.interestOps(SelectionKey.OP_READ);
+						return;
+					}
+					gesendeteNachrichten.incrementAndGet();
+				}
+				kanal.write(nachricht);
+				if (nachricht.hasRemaining()) {
+					// Rest wird geschrieben, sobald der Kanal wieder bereit ist
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Liest (und verwirft) Daten des Clients, um das Ende der Verbindung
+		 * zu erkennen.
+		 */
+		void lesen() throws IOException {
+			lesePuffer.clear();
+			if (kanal.read(lesePuffer) == -1)
+				abmelden();
+		}
+
+		void abmelden() {
+			if (!abonnenten.remove(this))
+				return;
+			anzahlAbonnenten.decrementAndGet();
+			key.cancel();
+			try {
+				kanal.close();
+			} catch (IOException e) {
+				System.err.println("Ausnahme bei Schliessung des Kanals: " + e);
+			}
+		}
+	}
+
+}
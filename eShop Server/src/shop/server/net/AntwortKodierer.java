@@ -0,0 +1,52 @@
+package shop.server.net;
+
+import java.util.List;
+
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Rechnung;
+import shop.common.valueobjects.WarenkorbArtikel;
+
+/**
+ * Schnittstelle fuer das Senden der umfangreichen Antworten des Protokolls
+ * (Artikellisten, Warenkorb, Rechnung) und der Fehlermeldungen dieser Aktionen.
+ * 
+ * Welche Implementierung eine Verbindung benutzt, handelt der Client direkt
+ * nach der Begrueszung mit der Aktion "prot" aus. Ohne Aushandlung wird das
+ * bisherige Textprotokoll verwendet.
+ * 
+ * @see TextAntwortKodierer
+ * @see BinaerAntwortKodierer
+ */
+interface AntwortKodierer {
+
+	/**
+	 * @return Name der Protokollversion, wie er bei der Aushandlung verwendet wird
+	 */
+	public String gibVersion();
+
+	public void sendeArtikel(List<Artikel> artikel);
+
+	public void sendeWarenkorbArtikel(List<WarenkorbArtikel> warenkorbArtikel);
+
+	public void sendeRechnung(Rechnung rechnung);
+
+	/**
+	 * Sendet die Antwort auf "gaa": die seit einer Version des Artikelbestands
+	 * geaenderten und entfernten Artikel, oder den ganzen Artikelbestand, wenn
+	 * die Aenderungen nicht mehr bekannt sind.
+	 * 
+	 * @param version Version des Artikelbestands, die der Client danach kennt
+	 * @param vollstaendig true, wenn artikel den ganzen Artikelbestand enthaelt
+	 * @param artikel hinzugefuegte oder geaenderte Artikel (bzw. alle Artikel)
+	 * @param entfernt Nummern der entfernten Artikel
+	 */
+	public void sendeArtikelAenderungen(long version, boolean vollstaendig, List<Artikel> artikel, List<Integer> entfernt);
+
+	/**
+	 * Sendet eine Fehlermeldung als Antwort auf eine der obigen Aktionen.
+	 * 
+	 * @param fehler Name der Ausnahme, z.B. "KundeExistiertNichtException"
+	 */
+	public void sendeFehler(String fehler);
+
+}
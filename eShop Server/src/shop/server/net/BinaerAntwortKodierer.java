@@ -0,0 +1,175 @@
+package shop.server.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Massengutartikel;
+import shop.common.valueobjects.Rechnung;
+import shop.common.valueobjects.WarenkorbArtikel;
+
+/**
+ * Kodierer fuer das binaere Protokoll (Version "bin1").
+ * 
+ * Jede Antwort ist ein Rahmen der Form
+ *   int    Laenge des Rahmens ohne dieses Feld
+ *   byte   Typ (ARTIKEL_LISTE, WARENKORB, RECHNUNG, FEHLER, ARTIKEL_AENDERUNGEN)
+ *   ...    Nutzdaten
+ * 
+ * Alle Zahlen werden mit fester Breite im Format von DataOutputStream
+ * (big-endian) uebertragen, Zeichenketten mit writeUTF().
+ * 
+ * Artikel:         byte Art (0 = Artikel, 1 = Massengutartikel), int Artikelnummer,
+ *                  UTF Bezeichnung, double Preis, int Bestand, int Packungsgroesse (0 bei Artikel)
+ * Warenkorbartikel: Artikel, int Stueckzahl
+ * Artikelliste:    int Anzahl, Anzahl * Artikel
+ * Warenkorb:       int Anzahl, Anzahl * Warenkorbartikel
+ * Rechnung:        long Datum (Millisekunden seit 1970), Warenkorb
+ * Aenderungen:     long Version, byte vollstaendig (0/1), Artikelliste,
+ *                  int Anzahl entfernter Artikel, Anzahl * int Artikelnummer
+ * Fehler:          UTF Name der Ausnahme
+ * 
+ * Jeder Rahmen wird vollstaendig im Speicher aufgebaut und mit einem einzigen
+ * Aufruf in den Ausgabestrom geschrieben.
+ */
+class BinaerAntwortKodierer implements AntwortKodierer {
+
+	static final String VERSION = "bin1";
+
+	// Typen der Rahmen
+	static final byte ARTIKEL_LISTE = 1;
+	static final byte WARENKORB = 2;
+	static final byte RECHNUNG = 3;
+	static final byte FEHLER = 4;
+	static final byte ARTIKEL_AENDERUNGEN = 5;
+
+	// Arten von Artikeln
+	static final byte ARTIKEL = 0;
+	static final byte MASSENGUTARTIKEL = 1;
+
+	private PrintStream out;
+
+	// Puffer fuer den Rahmen, der gerade aufgebaut wird
+	private ByteArrayOutputStream rahmen = new ByteArrayOutputStream(256);
+	private DataOutputStream daten = new DataOutputStream(rahmen);
+
+	BinaerAntwortKodierer(PrintStream out) {
+		this.out = out;
+	}
+
+	public String gibVersion() {
+		return VERSION;
+	}
+
+	public void sendeArtikel(List<Artikel> artikel) {
+		try {
+			beginneRahmen(ARTIKEL_LISTE);
+			schreibeArtikelListe(artikel);
+			sendeRahmen();
+		} catch (IOException e) {
+			// Tritt beim Schreiben in den ByteArrayOutputStream nicht auf
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void sendeWarenkorbArtikel(List<WarenkorbArtikel> warenkorbArtikel) {
+		try {
+			beginneRahmen(WARENKORB);
+			schreibeWarenkorb(warenkorbArtikel);
+			sendeRahmen();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void sendeRechnung(Rechnung rechnung) {
+		try {
+			beginneRahmen(RECHNUNG);
+			daten.writeLong(rechnung.getDatum().getTime());
+			schreibeWarenkorb(rechnung.getWarenkorb());
+			sendeRahmen();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void sendeArtikelAenderungen(long version, boolean vollstaendig, List<Artikel> artikel, List<Integer> entfernt) {
+		try {
+			beginneRahmen(ARTIKEL_AENDERUNGEN);
+			daten.writeLong(version);
+			daten.writeBoolean(vollstaendig);
+			schreibeArtikelListe(artikel);
+			daten.writeInt(entfernt.size());
+			for (Integer artikelnummer : entfernt) {
+				daten.writeInt(artikelnummer);
+			}
+			sendeRahmen();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void sendeFehler(String fehler) {
+		try {
+			beginneRahmen(FEHLER);
+			daten.writeUTF(fehler);
+			sendeRahmen();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void beginneRahmen(byte typ) throws IOException {
+		rahmen.reset();
+		// Platzhalter fuer die Laenge, wird in sendeRahmen() eingetragen
+		daten.writeInt(0);
+		daten.writeByte(typ);
+	}
+
+	private void sendeRahmen() {
+		byte[] bytes = rahmen.toByteArray();
+		int laenge = bytes.length - 4;
+		bytes[0] = (byte) (laenge >>> 24);
+		bytes[1] = (byte) (laenge >>> 16);
+		bytes[2] = (byte) (laenge >>> 8);
+		bytes[3] = (byte) laenge;
+		out.write(bytes, 0, bytes.length);
+		// Grosze Antworten nicht dauerhaft im Puffer behalten
+		if (rahmen.size() > 64 * 1024) {
+			rahmen = new ByteArrayOutputStream(256);
+			daten = new DataOutputStream(rahmen);
+		}
+	}
+
+	private void schreibeArtikelListe(List<Artikel> artikel) throws IOException {
+		daten.writeInt(artikel.size());
+		for (Artikel a : artikel) {
+			schreibeArtikel(a);
+		}
+	}
+
+	private void schreibeWarenkorb(List<WarenkorbArtikel> warenkorbArtikel) throws IOException {
+		daten.writeInt(warenkorbArtikel.size());
+		for (WarenkorbArtikel wa : warenkorbArtikel) {
+			schreibeArtikel(wa.getArtikel());
+			daten.writeInt(wa.getStueckzahl());
+		}
+	}
+
+	private void schreibeArtikel(Artikel a) throws IOException {
+		if (a instanceof Massengutartikel) {
+			daten.writeByte(MASSENGUTARTIKEL);
+		} else {
+			daten.writeByte(ARTIKEL);
+		}
+		daten.writeInt(a.getArtikelnummer());
+		daten.writeUTF(a.getBezeichnung());
+		daten.writeDouble(a.getPreis());
+		daten.writeInt(a.getBestand());
+		daten.writeInt(a instanceof Massengutartikel ? ((Massengutartikel) a).getPackungsgroesse() : 0);
+	}
+
+}
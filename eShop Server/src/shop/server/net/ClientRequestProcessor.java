@@ -1,16 +1,17 @@
 package shop.server.net;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.Socket;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TimerTask;
+import java.util.Map;
 import java.util.Vector;
 
-import java.util.Timer;
 
 import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
 import shop.common.exceptions.ArtikelBestandIstZuKleinException;
@@ -22,15 +23,16 @@ import shop.common.exceptions.MitarbeiterExistiertBereitsException;
 import shop.common.exceptions.MitarbeiterExistiertNichtException;
 import shop.common.exceptions.UsernameExistiertBereitsException;
 import shop.common.exceptions.WarenkorbIstLeerException;
-import shop.common.interfaces.ShopInterface;
 import shop.common.valueobjects.Artikel;
 import shop.common.valueobjects.Kunde;
-import shop.common.valueobjects.Massengutartikel;
 import shop.common.valueobjects.Mitarbeiter;
 import shop.common.valueobjects.MitarbeiterFunktion;
 import shop.common.valueobjects.Person;
 import shop.common.valueobjects.Rechnung;
 import shop.common.valueobjects.WarenkorbArtikel;
+import shop.server.domain.KatalogAenderungen;
+import shop.server.domain.KatalogSnapshot;
+import shop.server.domain.ShopVerwaltung;
 
 /**
  * Klasse zur Verarbeitung der Kommunikation zwischen einem Client und dem
@@ -47,43 +49,62 @@ import shop.common.valueobjects.WarenkorbArtikel;
  */
 class ClientRequestProcessor implements Runnable {
 	
-	private static final int WARENKORBLEERENTIMERDELAY = 1000*60*15;
+	// Kennzeichen eines Stapels mehrerer Aktionen (siehe stapelAusfuehren())
+	static final String STAPEL = "bat";
 
-	// Liste mit all den aktiven Clients
-//		private Vector<Socket> activeClients;
-	
 	// Shopverwaltungsobjekt, das die eigentliche Arbeit machen soll
-	private ShopInterface shop; 
+	private ShopVerwaltung shop; 
+	// Begrenzung und Kennzahlen der Serverlast
+	private Zulassungskontrolle kontrolle;
+	// Kommandos des Protokolls (von allen Verbindungen gemeinsam benutzt)
+	private KommandoRegistry kommandos;
+	// fertig kodierte Artikellisten (von allen Verbindungen gemeinsam benutzt)
+	private KatalogCache katalogCache;
+	// Verteiler der Aktualisierungen an die Clients (nur fuer die Kennzahlen)
+	private AboVerteiler aboVerteiler;
+	// Leeren verlassener Warenkoerbe (von allen Verbindungen gemeinsam benutzt)
+	private WarenkorbAblauf warenkorbAblauf;
+	// Sitzungen der angemeldeten Kunden (von allen Verbindungen gemeinsam benutzt)
+	private Sitzungen sitzungen;
 	
-	private Kunde kunde;
-	private Timer warenkorbLeerenTimer;
-	private TimerTask warenkorbLeerenTimerTask;
+	// Sitzung des auf dieser Verbindung angemeldeten Kunden, oder null
+	private Sitzung sitzung;
 
 	// Datenstrukturen fuer die Kommunikation
 	private Socket clientSocket;
-//	private Socket clientUpdateSocket;
-//	private int updatePort;
+	private String gegenstelle;
 	private BufferedReader in;
 	private PrintStream out;
+	// Kodierung der Artikel-, Warenkorb- und Rechnungsantworten (siehe Aktion "prot")
+	private AntwortKodierer kodierer;
+	// true, waehrend die Aktionen eines Stapels ausgefuehrt werden
+	private boolean imStapel = false;
 	
 	/**
 	 * Konstruktor zur Erzeugung des Clientrequestprozessors.
 	 * 
 	 * @param socket
-	 * @param shopVerwaltung
+	 * @param kontext Kontext des Servers (Shopverwaltung, Zulassungskontrolle, Kommandos),
+	 *                bei dessen Zulassungskontrolle die Verbindung zugelassen wurde
 	 */
-	public ClientRequestProcessor(Socket socket, ShopInterface shopVerwaltung) {
+	public ClientRequestProcessor(Socket socket, ServerKontext kontext) {
 
-//		activeClients = clients;
-		shop = shopVerwaltung;
+		shop = kontext.gibShop();
+		kontrolle = kontext.gibKontrolle();
+		kommandos = kontext.gibKommandos();
+		katalogCache = kontext.gibKatalogCache();
+		aboVerteiler = kontext.gibAboVerteiler();
+		warenkorbAblauf = kontext.gibWarenkorbAblauf();
+		sitzungen = kontext.gibSitzungen();
 		clientSocket = socket;
-		kunde = null;
-//		updatePort = port;
+		sitzung = null;
 
 		// I/O-Streams initialisieren und ClientRequestProcessor-Objekt als Thread starten:
 		try {
 			in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-			out = new PrintStream(clientSocket.getOutputStream());
+			// Die Antworten werden gepuffert und erst gesendet, wenn keine
+			// weiteren Anfragen des Clients vorliegen (siehe run())
+			out = new PrintStream(new BufferedOutputStream(clientSocket.getOutputStream()));
 		} catch (IOException e) {
 			try {
 				clientSocket.close();
@@ -94,189 +115,368 @@ class ClientRequestProcessor implements Runnable {
 			System.err.println("Ausnahme bei Bereitstellung des Streams: " + e);
 			return;
 		}
+		kodierer = new TextAntwortKodierer(out);
 		
-		warenkorbLeerenTimer = new Timer();
-		warenkorbLeerenTimerTask = new WarenkorbLeerenTimer(shop, kunde);
-		
+		gegenstelle = clientSocket.getInetAddress() + ":" + clientSocket.getPort();
+		System.out.println("Verbunden mit " + gegenstelle);
+	}
+	
+	/**
+	 * Konstruktor fuer Verbindungen, die nicht ueber ein blockierendes Socket
+	 * bedient werden (siehe NioShopServer). Die Antworten werden in den 
+	 * angegebenen Stream geschrieben, die Parameter einer Anfrage werden vor 
+	 * jedem Aufruf von bearbeiteAnfrage() mit setzeEingabe() bereitgestellt.
+	 * 
+	 * @param out Stream fuer die Antworten an den Client
+	 * @param gegenstelle Beschreibung der Gegenstelle (Adresse:Port)
+	 * @param kontext Kontext des Servers, bei dessen Zulassungskontrolle die Verbindung zugelassen wurde
+	 */
+	ClientRequestProcessor(PrintStream out, String gegenstelle, ServerKontext kontext) {
+		shop = kontext.gibShop();
+		kontrolle = kontext.gibKontrolle();
+		kommandos = kontext.gibKommandos();
+		katalogCache = kontext.gibKatalogCache();
+		aboVerteiler = kontext.gibAboVerteiler();
+		warenkorbAblauf = kontext.gibWarenkorbAblauf();
+		sitzungen = kontext.gibSitzungen();
+		clientSocket = null;
+		sitzung = null;
+		this.out = out;
+		this.gegenstelle = gegenstelle;
+		kodierer = new TextAntwortKodierer(out);
 		
-		System.out.println("Verbunden mit " + clientSocket.getInetAddress()
-				+ ":" + clientSocket.getPort());
+		System.out.println("Verbunden mit " + gegenstelle);
 	}
 
 	/**
 	 * Methode zur Abwicklung der Kommunikation mit dem Client gemaesz dem
-	 * vorgebenen Kommunikationsprotokoll.
+	 * vorgebenen Kommunikationsprotokoll. Wirft die Bearbeitung einer Anfrage
+	 * eine Ausnahme (z.B. bei einem fehlerhaften Parameter), wird die Verbindung
+	 * beendet, damit ihr Platz in der Zulassungskontrolle und ihre Sitzung
+	 * freigegeben werden.
 	 */
 	public void run() {
 
 		String input = "";
+		boolean weiter = true;
 
-		// Begrueszungsnachricht an den Client senden
-		out.println("Server an Client: Bin bereit fuer Deine Anfragen!");
+		try {
+			// Begrueszungsnachricht an den Client senden
+			begruessen();
+			out.flush();
 
-		// Hauptschleife zur wiederholten Abwicklung der Kommunikation
-		do {
-			// Beginn der Benutzerinteraktion:
-			// Aktion vom Client einlesen [dann ggf. weitere Daten einlesen ...]
-			try {
-				input = in.readLine();
-				if(kunde != null){
-					resetWarenkorbLeerenTimer();
-					if(shop.gibWarenkorb(kunde) != null && shop.gibWarenkorb(kunde).size() != 0){
-						warenkorbLeerenTimer.schedule(warenkorbLeerenTimerTask, WARENKORBLEERENTIMERDELAY);
-					}
+			// Hauptschleife zur wiederholten Abwicklung der Kommunikation
+			do {
+				// Beginn der Benutzerinteraktion:
+				// Aktion vom Client einlesen [dann ggf. weitere Daten einlesen ...]
+				try {
+					input = in.readLine();
+				} catch (Exception e) {
+					System.out.println("--->Fehler beim Lesen vom Client (Aktion): ");
+					System.out.println(e.getMessage());
+					continue;
 				}
-			} catch (Exception e) {
-				System.out.println("--->Fehler beim Lesen vom Client (Aktion): ");
-				System.out.println(e.getMessage());
-				continue;
-			}
+				weiter = bearbeiteAnfrage(input);
+				
+				// Hat der Client bereits weitere Anfragen gesendet (Pipelining), werden
+				// deren Antworten gesammelt und zusammen mit dieser gesendet
+				try {
+					if (weiter && !in.ready())
+						out.flush();
+				} catch (IOException e) {
+					out.flush();
+				}
+			} while (weiter);
+		} catch (RuntimeException e) {
+			System.out.println("--->Fehler bei der Bearbeitung der Anfrage \"" + input + "\" von " + gegenstelle + ": ");
+			System.out.println(e);
+		} finally {
+			// Verbindung wurde vom Client abgebrochen:
+			disconnect();
+		}
+	}
+	
+	/**
+	 * Sendet die Begrueszungsnachricht an den Client.
+	 */
+	void begruessen() {
+		out.println("Server an Client: Bin bereit fuer Deine Anfragen!");
+	}
+	
+	/**
+	 * Setzt die Eingabe, aus der die Parameter der naechsten Anfrage gelesen 
+	 * werden. Wird nur von nicht-blockierenden Verbindungen verwendet.
+	 * 
+	 * @param eingabe
+	 */
+	void setzeEingabe(BufferedReader eingabe) {
+		in = eingabe;
+	}
+	
+	/**
+	 * Bearbeitet eine einzelne Anfrage des Clients. Die Parameter der Aktion
+	 * werden dabei aus der Eingabe gelesen.
+	 * 
+	 * @param input Kennzeichen der Aktion (oder null, wenn der Client die Verbindung abgebrochen hat)
+	 * @return false, wenn der Client die Verbindung beenden moechte
+	 */
+	boolean bearbeiteAnfrage(String input) {
+		warenkorbAblaufAktualisieren();
 
-			// Eingabe bearbeiten:
-			if (input == null) {
-				// input wird von readLine() auf null gesetzt, wenn Client Verbindung abbricht
-				// Einfach behandeln wie ein "quit"
-				input = "q";
+		// Eingabe bearbeiten:
+		if (input == null) {
+			// input wird von readLine() auf null gesetzt, wenn Client Verbindung abbricht
+			// Einfach behandeln wie ein "quit"
+			input = "q";
+		} else {
+			// Unbekannte Aktionen werden ignoriert
+			Kommando kommando = kommandos.gibKommando(input);
+			if (kommando != null)
+				kommando.ausfuehren(this);
+		}
+		
+		return !input.equals("q");
+	}
+	
+	/**
+	 * Erzeugt die Registry mit allen Kommandos des Protokolls. Die Registry wird
+	 * einmal beim Start des Servers erzeugt und allen ClientRequestProcessor-Objekten
+	 * uebergeben. Weitere Kommandos koennen mit KommandoRegistry.registriere()
+	 * hinzugefuegt werden.
+	 * 
+	 * @return KommandoRegistry mit den Kommandos des Protokolls
+	 */
+	static KommandoRegistry erzeugeKommandos() {
+		KommandoRegistry kommandos = new KommandoRegistry();
+		// Artikel-Methoden
+		kommandos.registriere("fae", 5, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.fuegeArtikelEin();
 			}
-			// Artikel-Methoden 
-			else if (input.equals("fae")) {
-				fuegeArtikelEin();
+		});
+		kommandos.registriere("fme", 6, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.fuegeMassengutartikelEin();
 			}
-			else if (input.equals("fme")) {
-				fuegeMassengutartikelEin();
+		});
+		kommandos.registriere("abv", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.artikelBestandVeraendern();
 			}
-			else if (input.equals("abv")) {
-				artikelBestandVeraendern();
+		});
+		kommandos.registriere("gaasna", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibAlleArtikelSortiertNachArtikelnummer();
 			}
-			else if (input.equals("gaasna")) {
-				gibAlleArtikelSortiertNachArtikelnummer();
+		});
+		kommandos.registriere("gaasnb", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibAlleArtikelSortiertNachBezeichnung();
 			}
-			else if (input.equals("gaasnb")) {
-				gibAlleArtikelSortiertNachBezeichnung();
+		});
+		kommandos.registriere("gaa", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelAenderungen();
 			}
-			else if (input.equals("saa")) {
-				sucheArtikelNachArtikelnummer();
+		});
+		kommandos.registriere("gasna", 2, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelSeite(false);
 			}
-			else if (input.equals("sab")) {
-				sucheArtikelNachBezeichnung();
+		});
+		kommandos.registriere("gasnb", 2, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelSeite(true);
 			}
-			else if (input.equals("ab")) {
-				artikelBearbeiten();
+		});
+		kommandos.registriere("gana", 2, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelNachArtikelnummer();
 			}
-			else if (input.equals("ea")) {
-				entferneArtikel();
+		});
+		kommandos.registriere("ganb", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelNachBezeichnung();
 			}
-			else if (input.equals("scha")) {
-				schreibeArtikel();
+		});
+		kommandos.registriere("gainb", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelImNummernbereich();
 			}
-			// Mitarbeiter-Methoden
-			else if (input.equals("mf")) {
-				sucheMitarbeiter();
+		});
+		kommandos.registriere("gaipb", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibArtikelImPreisbereich();
 			}
-			else if (input.equals("ma")) {
-				gibAlleMitarbeiter();
+		});
+		kommandos.registriere("saa", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.sucheArtikelNachArtikelnummer();
 			}
-			else if (input.equals("me")) {
-				fuegeMitarbeiterHinzu();
+		});
+		kommandos.registriere("sab", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.sucheArtikelNachBezeichnung();
 			}
-			else if (input.equals("mb")) {
-				mitarbeiterBearbeiten();
+		});
+		kommandos.registriere("ab", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.artikelBearbeiten();
 			}
-			else if (input.equals("ml")) {
-				mitarbeiterLoeschen();
+		});
+		kommandos.registriere("ea", 2, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.entferneArtikel();
 			}
-			else if (input.equals("sm")) {
-				schreibeMitarbeiter();
+		});
+		kommandos.registriere("scha", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.schreibeArtikel();
 			}
-			// Kunden-Methoden
-			else if (input.equals("ke")) {
-				fuegeKundenHinzu();
+		});
+		// Mitarbeiter-Methoden
+		kommandos.registriere("mf", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.sucheMitarbeiter();
 			}
-			else if (input.equals("kb")) {
-				kundenBearbeiten();
-			} 
-			else if (input.equals("sk")) {
-				sucheKunde();
+		});
+		kommandos.registriere("ma", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibAlleMitarbeiter();
 			}
-			else if (input.equals("gak")) {
-				gibAlleKunden();
+		});
+		kommandos.registriere("me", 5, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.fuegeMitarbeiterHinzu();
 			}
-			else if (input.equals("kl")) {
-				kundenLoeschen();
+		});
+		kommandos.registriere("mb", 6, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.mitarbeiterBearbeiten();
 			}
-			else if (input.equals("sck")) {
-				schreibeKunden();
+		});
+		kommandos.registriere("ml", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.mitarbeiterLoeschen();
 			}
-			// Warenkorb-Methoden
-			else if (input.equals("gw")) {
-				gibWarenkorb();
+		});
+		kommandos.registriere("sm", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.schreibeMitarbeiter();
 			}
-			else if (input.equals("idwl")) {
-				inDenWarenkorbLegen();
+		});
+		// Kunden-Methoden
+		kommandos.registriere("ke", 6, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.fuegeKundenHinzu();
 			}
-			else if (input.equals("adwh")) {
-				ausDemWarenkorbHerausnehmen();
+		});
+		kommandos.registriere("kb", 7, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.kundenBearbeiten();
 			}
-			else if (input.equals("sa")) {
-				stueckzahlAendern();
+		});
+		kommandos.registriere("sk", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.sucheKunde();
 			}
-			else if (input.equals("k")) {
-				kaufen();
+		});
+		kommandos.registriere("gak", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibAlleKunden();
 			}
-			else if (input.equals("l")) {
-				leeren();
+		});
+		kommandos.registriere("kl", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.kundenLoeschen();
 			}
-			// Ereignis-Methoden
-			else if (input.equals("se")) {
-				schreibeEreignisse();
+		});
+		kommandos.registriere("sck", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.schreibeKunden();
 			}
-			else if (input.equals("gbhd")) {
-				gibBestandsHistorieDaten();
+		});
+		// Warenkorb-Methoden
+		kommandos.registriere("gw", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibWarenkorb();
 			}
-			else if (input.equals("gl")) {
-				gibLogDatei();
+		});
+		kommandos.registriere("idwl", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.inDenWarenkorbLegen();
 			}
-			// Login-Methoden
-			else if (input.equals("pl")) {
-				pruefeLogin();
+		});
+		kommandos.registriere("adwh", 2, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.ausDemWarenkorbHerausnehmen();
 			}
-			else if (input.equals("lv")) {
-				loginVergessen();
+		});
+		kommandos.registriere("sa", 3, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.stueckzahlAendern();
 			}
-			// ---
-			// weitere Server-Dienste ...
-			// ---
-
-		} while (!(input.equals("q")));
-
-		// Verbindung wurde vom Client abgebrochen:
-		disconnect();		
+		});
+		kommandos.registriere("k", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.kaufen();
+			}
+		});
+		kommandos.registriere("l", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.leeren();
+			}
+		});
+		// Ereignis-Methoden
+		kommandos.registriere("se", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.schreibeEreignisse();
+			}
+		});
+		kommandos.registriere("gbhd", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibBestandsHistorieDaten();
+			}
+		});
+		kommandos.registriere("gl", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibLogDatei();
+			}
+		});
+		// Login-Methoden
+		kommandos.registriere("pl", 2, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.pruefeLogin();
+			}
+		});
+		kommandos.registriere("lv", 4, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.loginVergessen();
+			}
+		});
+		// Stapel-Methoden
+		kommandos.registriere(STAPEL, 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.stapelAusfuehren();
+			}
+		});
+		// Server-Methoden
+		kommandos.registriere("prot", 1, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.protokollAushandeln();
+			}
+		});
+		kommandos.registriere("sst", 0, new Kommando() {
+			public void ausfuehren(ClientRequestProcessor p) {
+				p.gibServerStatistik();
+			}
+		});
+		// ---
+		// weitere Server-Dienste ...
+		// ---
+		return kommandos;
 	}
 	
-//	private void notifyClients(String aktion) {
-//	// Output-Stream initialisieren:
-//	PrintStream cout;
-//	for (int i = 0; i < activeClients.size(); i++) {
-//		try {
-//			// Stream-Objekt fuer Text-Output ueber Client-Socket erzeugen
-//			cout = new PrintStream(activeClients.get(i).getOutputStream());
-//			// Kennzeichen fuer gewaehlte Aktion senden
-//			cout.println(aktion);
-//		} catch (IOException e) {
-//			System.err.println("Fehler beim Client-Socket-Stream oeffnen: " + e);
-//			// Wenn im "try"-Block Fehler auftreten, dann Client-Socket schlieen:
-//			if (activeClients.get(i) != null)
-//				try {
-//					activeClients.get(i).close();
-//				} catch (IOException e1) {
-//					// TODO Auto-generated catch block
-//					e1.printStackTrace();
-//				}
-//			System.err.println("Client-Socket geschlossen");
-//		}
-//	}
-//}
-	
 	private void loginVergessen() {
 		Kunde k = null;
 		try {
@@ -395,17 +595,6 @@ class ClientRequestProcessor implements Runnable {
 		Person p = shop.pruefeLogin(username, password);
 		if (p != null) {
 			sendePersonAnClient(p);
-//			// Server-Update-Socket anlegen und lauschen
-//			ServerSocket serverUpdateSocket = null;
-//			try {
-//				serverUpdateSocket = new ServerSocket(updatePort);
-//				clientUpdateSocket = serverUpdateSocket.accept();
-//				activeClients.add(clientUpdateSocket);
-//			} catch (IOException e) {
-//				// TODO Auto-generated catch block
-//				e.printStackTrace();
-//			}
-//			activeClients.add(clientSocket);
 		} else {
 			out.println("Fehler");
 		}
@@ -584,29 +773,140 @@ class ClientRequestProcessor implements Runnable {
 	}
 	
 	private void gibAlleArtikelSortiertNachArtikelnummer() {
-		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
-		List<Artikel> artikel = null;
-		artikel = shop.gibAlleArtikelSortiertNachArtikelnummer();
-		
-		sendeArtikelAnClient(artikel);
+		// Die Antwort wird nur neu kodiert, wenn sich der Artikelbestand seit
+		// der letzten Anfrage geaendert hat
+		byte[] antwort = katalogCache.gibArtikelListe(shop.gibKatalogSnapshot(), false, kodierer.gibVersion());
+		out.write(antwort, 0, antwort.length);
 	}
 	
 	private void gibAlleArtikelSortiertNachBezeichnung() {
+		byte[] antwort = katalogCache.gibArtikelListe(shop.gibKatalogSnapshot(), true, kodierer.gibVersion());
+		out.write(antwort, 0, antwort.length);
+	}
+	
+	/**
+	 * Diese Methode empfaengt die Version des Artikelbestands, die der Client
+	 * zuletzt erhalten hat, und sendet ihm nur die seither hinzugefuegten,
+	 * geaenderten und entfernten Artikel. Sind diese Aenderungen nicht mehr
+	 * bekannt, wird der ganze Artikelbestand gesendet.
+	 * @see AntwortKodierer#sendeArtikelAenderungen(long, boolean, List, List)
+	 */
+	private void gibArtikelAenderungen() {
+		long seitVersion = -1;
+		try {
+			seitVersion = Long.parseLong(in.readLine());
+		} catch (Exception e) {
+			// Unbekannte Version: ganzen Artikelbestand senden
+			System.out.println("--->Fehler beim Lesen vom Client (Version): ");
+			System.out.println(e.getMessage());
+		}
 		
-		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
-		List<Artikel> artikel = null;
-		artikel = shop.gibAlleArtikelSortiertNachBezeichnung();
+		KatalogAenderungen aenderungen = shop.gibKatalogAenderungen(seitVersion);
+		if (!aenderungen.istVollstaendig()) {
+			KatalogSnapshot snapshot = shop.gibKatalogSnapshot();
+			kodierer.sendeArtikelAenderungen(snapshot.getVersion(), true, snapshot.getArtikelSortiertNachArtikelnummer(), Collections.<Integer>emptyList());
+			return;
+		}
 		
-		sendeArtikelAnClient(artikel);
+		List<Artikel> geaendert = new Vector<Artikel>();
+		List<Integer> entfernt = new Vector<Integer>();
+		for (Integer artikelnummer : aenderungen.getArtikelnummern()) {
+			try {
+				geaendert.add(shop.gibArtikel(artikelnummer));
+			} catch (ArtikelExistiertNichtException e) {
+				entfernt.add(artikelnummer);
+			}
+		}
+		kodierer.sendeArtikelAenderungen(aenderungen.getVersion(), false, geaendert, entfernt);
 	}
 	
-	private void sucheArtikelNachArtikelnummer() {
-		if(kunde != null){
-			resetWarenkorbLeerenTimer();
-			if(shop.gibWarenkorb(kunde) != null && shop.gibWarenkorb(kunde).size() != 0){
-				warenkorbLeerenTimer.schedule(warenkorbLeerenTimerTask, WARENKORBLEERENTIMERDELAY);
-			}
+	/**
+	 * Diese Methode empfaengt Offset und Limit und sendet die entsprechende
+	 * Seite des Artikelbestands, sortiert nach Artikelnummer oder Bezeichnung.
+	 * @param nachBezeichnung
+	 */
+	private void gibArtikelSeite(boolean nachBezeichnung) {
+		String offset = liesParameter("Offset");
+		String limit = liesParameter("Limit");
+		try {
+			kodierer.sendeArtikel(shop.gibArtikelSeite(nachBezeichnung, Integer.parseInt(offset), Integer.parseInt(limit)));
+		} catch (NumberFormatException e) {
+			kodierer.sendeFehler("NumberFormatException");
+		}
+	}
+	
+	/**
+	 * Diese Methode empfaengt eine Artikelnummer und ein Limit und sendet die
+	 * darauf folgenden Artikel. Zum Weiterblaettern sendet der Client die
+	 * Nummer des letzten erhaltenen Artikels.
+	 */
+	private void gibArtikelNachArtikelnummer() {
+		String nachArtikelnummer = liesParameter("Artikelnummer");
+		String limit = liesParameter("Limit");
+		try {
+			kodierer.sendeArtikel(shop.gibArtikelNachArtikelnummer(Integer.parseInt(nachArtikelnummer), Integer.parseInt(limit)));
+		} catch (NumberFormatException e) {
+			kodierer.sendeFehler("NumberFormatException");
+		}
+	}
+	
+	/**
+	 * Diese Methode empfaengt Bezeichnung und Artikelnummer des letzten
+	 * erhaltenen Artikels sowie ein Limit und sendet die in der Sortierung nach
+	 * Bezeichnung darauf folgenden Artikel. Fuer die erste Seite sendet der
+	 * Client eine leere Bezeichnung.
+	 */
+	private void gibArtikelNachBezeichnung() {
+		String nachBezeichnung = liesParameter("Bezeichnung");
+		String nachArtikelnummer = liesParameter("Artikelnummer");
+		String limit = liesParameter("Limit");
+		try {
+			kodierer.sendeArtikel(shop.gibArtikelNachBezeichnung(nachBezeichnung, Integer.parseInt(nachArtikelnummer), Integer.parseInt(limit)));
+		} catch (NumberFormatException e) {
+			kodierer.sendeFehler("NumberFormatException");
+		}
+	}
+	
+	private void gibArtikelImNummernbereich() {
+		String von = liesParameter("Von");
+		String bis = liesParameter("Bis");
+		String limit = liesParameter("Limit");
+		try {
+			kodierer.sendeArtikel(shop.gibArtikelImNummernbereich(Integer.parseInt(von), Integer.parseInt(bis), Integer.parseInt(limit)));
+		} catch (NumberFormatException e) {
+			kodierer.sendeFehler("NumberFormatException");
+		}
+	}
+	
+	private void gibArtikelImPreisbereich() {
+		String von = liesParameter("Von");
+		String bis = liesParameter("Bis");
+		String limit = liesParameter("Limit");
+		try {
+			kodierer.sendeArtikel(shop.gibArtikelImPreisbereich(Double.parseDouble(von), Double.parseDouble(bis), Integer.parseInt(limit)));
+		} catch (NumberFormatException e) {
+			kodierer.sendeFehler("NumberFormatException");
+		}
+	}
+	
+	/**
+	 * Liest einen Parameter vom Client.
+	 * @param name Name des Parameters fuer die Fehlermeldung
+	 * @return Zeile oder "", wenn nicht gelesen werden konnte
+	 */
+	private String liesParameter(String name) {
+		try {
+			String zeile = in.readLine();
+			return zeile == null ? "" : zeile;
+		} catch (IOException e) {
+			System.out.println("--->Fehler beim Lesen vom Client (" + name + "): ");
+			System.out.println(e.getMessage());
+			return "";
 		}
+	}
+	
+	private void sucheArtikelNachArtikelnummer() {
+		warenkorbAblaufAktualisieren();
 		
 		String input = null;
 		// lese die notwendigen Parameter, einzeln pro Zeile
@@ -623,7 +923,7 @@ class ClientRequestProcessor implements Runnable {
 		List<Artikel> artikel = null;
 		artikel = shop.sucheArtikel(artikelnummer);
 
-		sendeArtikelAnClient(artikel);
+		kodierer.sendeArtikel(artikel);
 	}
 	
 	private void sucheArtikelNachBezeichnung() {
@@ -642,7 +942,7 @@ class ClientRequestProcessor implements Runnable {
 		List<Artikel> artikel = null;
 		artikel = shop.sucheArtikel(bezeichnung);
 
-		sendeArtikelAnClient(artikel);
+		kodierer.sendeArtikel(artikel);
 	}
 	
 	private void artikelBearbeiten() {
@@ -744,15 +1044,15 @@ class ClientRequestProcessor implements Runnable {
 			System.out.println("--->Fehler beim Lesen vom Client (ID Kunde): ");
 			System.out.println(e.getMessage());
 		}
-		int id = Integer.parseInt(input);
+		String id = input;
 		
 		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
 		List<WarenkorbArtikel> warenkorbArtikel = null;
 		try {
-			warenkorbArtikel = shop.gibWarenkorb(shop.sucheKunde(id));
-			sendeWarenkorbArtikelAnClient(warenkorbArtikel);
+			warenkorbArtikel = shop.gibWarenkorb(gibKunde(id));
+			kodierer.sendeWarenkorbArtikel(warenkorbArtikel);
 		} catch (KundeExistiertNichtException e) {
-			out.println("KundeExistiertNichtException");
+			kodierer.sendeFehler("KundeExistiertNichtException");
 		}
 	}
 	
@@ -766,7 +1066,7 @@ class ClientRequestProcessor implements Runnable {
 			System.out.println("--->Fehler beim Lesen vom Client (ID Kunde): ");
 			System.out.println(e.getMessage());
 		}
-		int id = Integer.parseInt(input);
+		String id = input;
 
 		// dann die Artikelnummer:
 		try {
@@ -788,10 +1088,8 @@ class ClientRequestProcessor implements Runnable {
 
 		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
 		try {
-			shop.inDenWarenkorbLegen(shop.sucheKunde(id), artikelnummer, stueckzahl);
+			shop.inDenWarenkorbLegen(gibKunde(id), artikelnummer, stueckzahl);
 			out.println("Erfolg");
-//			// Benachrichtige Clients dass Sie ihre Artikel Tabelle updaten sollen
-//			notifyClients("uat"); // (U)pdate(A)rtikel(T)able -> "uat"	
 		} catch (ArtikelBestandIstZuKleinException e) {
 			out.println("ArtikelBestandIstZuKleinException");
 		} catch (ArtikelExistiertNichtException e) {
@@ -803,12 +1101,7 @@ class ClientRequestProcessor implements Runnable {
 		}
 		
 		// Starte Timer:
-		if(kunde != null){
-			resetWarenkorbLeerenTimer();
-			if(shop.gibWarenkorb(kunde) != null && shop.gibWarenkorb(kunde).size() != 0){
-				warenkorbLeerenTimer.schedule(warenkorbLeerenTimerTask, WARENKORBLEERENTIMERDELAY);
-			}
-		}
+		warenkorbAblaufAktualisieren();
 	}
 	
 	private void ausDemWarenkorbHerausnehmen() {
@@ -821,7 +1114,7 @@ class ClientRequestProcessor implements Runnable {
 			System.out.println("--->Fehler beim Lesen vom Client (ID Kunde): ");
 			System.out.println(e.getMessage());
 		}
-		int id = Integer.parseInt(input);
+		String id = input;
 
 		// dann die Artikelnummer:
 		try {
@@ -834,7 +1127,7 @@ class ClientRequestProcessor implements Runnable {
 
 		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
 		try {
-			shop.ausDemWarenkorbHerausnehmen(shop.sucheKunde(id), artikelnummer);
+			shop.ausDemWarenkorbHerausnehmen(gibKunde(id), artikelnummer);
 			out.println("Erfolg");
 		} catch (ArtikelExistiertNichtException e) {
 			out.println("ArtikelExistiertNichtException");
@@ -855,7 +1148,7 @@ class ClientRequestProcessor implements Runnable {
 			System.out.println("--->Fehler beim Lesen vom Client (ID Kunde): ");
 			System.out.println(e.getMessage());
 		}
-		int id = Integer.parseInt(input);
+		String id = input;
 
 		// dann die Warenkorb Artikelnummer:
 		try {
@@ -877,7 +1170,7 @@ class ClientRequestProcessor implements Runnable {
 
 		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
 		try {
-			shop.stueckzahlAendern(shop.sucheKunde(id), artikelnummer, neueStueckzahl);
+			shop.stueckzahlAendern(gibKunde(id), artikelnummer, neueStueckzahl);
 			out.println("Erfolg");
 		} catch (ArtikelBestandIstZuKleinException e) {
 			out.println("ArtikelBestandIstZuKleinException");
@@ -892,7 +1185,7 @@ class ClientRequestProcessor implements Runnable {
 	
 	private void kaufen() {
 		//Stoppe Timer
-		resetWarenkorbLeerenTimer();
+		warenkorbAblaufAbbrechen();
 		
 		String input = null;
 		// lese die notwendigen Parameter, einzeln pro Zeile
@@ -903,24 +1196,24 @@ class ClientRequestProcessor implements Runnable {
 			System.out.println("--->Fehler beim Lesen vom Client (ID Kunde): ");
 			System.out.println(e.getMessage());
 		}
-		int id = Integer.parseInt(input);
+		String id = input;
 
 		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
 		Rechnung rechnung = null;
 		try {
-			rechnung = shop.kaufen(shop.sucheKunde(id));
-			sendeRechnungAnClient(rechnung);
+			rechnung = shop.kaufen(gibKunde(id));
+			kodierer.sendeRechnung(rechnung);
 		} catch (IOException e) {
-			out.println("IOException");
+			kodierer.sendeFehler("IOException");
 		} catch (WarenkorbIstLeerException e) {
-			out.println("WarenkorbIstLeerException");
+			kodierer.sendeFehler("WarenkorbIstLeerException");
 		} catch (KundeExistiertNichtException e) {
-			out.println("KundeExistiertNichtException");
+			kodierer.sendeFehler("KundeExistiertNichtException");
 		}
 	}
 	
 	private void leeren() {
-		resetWarenkorbLeerenTimer();
+		warenkorbAblaufAbbrechen();
 
 		String input = null;
 		// lese die notwendigen Parameter, einzeln pro Zeile
@@ -931,11 +1224,11 @@ class ClientRequestProcessor implements Runnable {
 			System.out.println("--->Fehler beim Lesen vom Client (ID Kunde): ");
 			System.out.println(e.getMessage());
 		}
-		int id = Integer.parseInt(input);
+		String id = input;
 
 		// die eigentliche Arbeit soll das Shopverwaltungsobjekt machen:
 		try {
-			shop.leeren(shop.sucheKunde(id));
+			shop.leeren(gibKunde(id));
 			out.println("Erfolg");
 		} catch (ArtikelBestandIstKeineVielfacheDerPackungsgroesseException e) {
 			out.println("ArtikelBestandIstKeineVielfacheDerPackungsgroesseException");
@@ -960,10 +1253,12 @@ class ClientRequestProcessor implements Runnable {
 				out.println(((Kunde) p).getPlz());
 				// Wohnort des Kunden senden
 				out.println(((Kunde) p).getWohnort());
-				kunde = ((Kunde)p);
-				resetWarenkorbLeerenTimer();
+				sitzungBeenden();
+				sitzung = sitzungen.beginnen((Kunde) p);
+				warenkorbAblaufAktualisieren();
 				break;
 			case Mitarbeiter: 
+				sitzungBeenden();
 				// Funktion des Mitarbeiters senden
 				out.println(((Mitarbeiter) p).getFunktion());
 				// Gehalt des Mitarbeiters senden
@@ -975,68 +1270,6 @@ class ClientRequestProcessor implements Runnable {
 		out.println(p.getBlockiert());
 	}
 	
-	private void sendeArtikelAnClient(List<Artikel> artikel) {
-		Iterator<Artikel> iter = artikel.iterator();
-		Artikel a = null;
-		// Anzahl der Artikel senden
-		out.println(artikel.size());
-		while (iter.hasNext()) {
-			a = iter.next();
-			// Artikeltyp des Artikels senden
-			if (a instanceof Massengutartikel)
-				out.println("Massengutartikel");
-			else 
-				out.println("Artikel");
-			// Nummer des Artikels senden
-			out.println(a.getArtikelnummer());
-			// Bezeichnung des Artikels senden
-			out.println(a.getBezeichnung());
-			// Preis des Artikels senden
-			out.println(a.getPreis());
-			// Bestand des Artikels senden
-			out.println(a.getBestand());
-			if (a instanceof Massengutartikel)
-				// Packungsgroesse des Massengutartikels senden
-				out.println(((Massengutartikel) a).getPackungsgroesse());
-		}
-	}
-	
-	private void sendeWarenkorbArtikelAnClient(List<WarenkorbArtikel> warenkorbArtikel) {
-		Iterator<WarenkorbArtikel> iter = warenkorbArtikel.iterator();
-		WarenkorbArtikel wa = null;
-		// Anzahl der Warenkorb Artikel senden
-		out.println(warenkorbArtikel.size());
-		while (iter.hasNext()) {
-			wa = iter.next();
-			// Artikel des Warenkorb Artikels senden
-			Artikel a = wa.getArtikel();
-			// Artikeltyp des Artikels senden
-			if (a instanceof Massengutartikel)
-				out.println("Massengutartikel");
-			else 
-				out.println("Artikel");
-			// Nummer des Artikels senden
-			out.println(a.getArtikelnummer());
-			// Bezeichnung des Artikels senden
-			out.println(a.getBezeichnung());
-			// Preis des Artikels senden
-			out.println(a.getPreis());
-			// Bestand des Artikels senden
-			out.println(a.getBestand());
-			if (a instanceof Massengutartikel)
-				// Packungsgroesse des Massengutartikels senden
-				out.println(((Massengutartikel) a).getPackungsgroesse());
-			// Stueckzahl des Warenkorb Artikels senden
-			out.println(wa.getStueckzahl());
-		}
-	}
-	
-	private void sendeRechnungAnClient(Rechnung rechnung) {
-		// Datum der Rechnung senden
-		out.println(rechnung.getDatum());
-		// Warenkorb der Rechnung senden
-		sendeWarenkorbArtikelAnClient(rechnung.getWarenkorb());
-	}
 	
 	//////// Mitarbeiter ////////
 
@@ -1343,19 +1576,203 @@ class ClientRequestProcessor implements Runnable {
 		}
 	}
 
-	private void resetWarenkorbLeerenTimer(){
-		warenkorbLeerenTimerTask.cancel();
-		warenkorbLeerenTimerTask = new WarenkorbLeerenTimer(shop, kunde);
+	//////// Server ////////
+	
+	/**
+	 * Diese Methode empfaengt die Anzahl N der Aktionen eines Stapels und fuehrt
+	 * danach die N folgenden Aktionen (jeweils Kennzeichen und Parameter wie 
+	 * ohne Stapel) der Reihe nach aus. Die Antworten werden in derselben 
+	 * Reihenfolge und ohne eigenen Rahmen gesendet. Unbekannte Aktionen, "q"
+	 * und Stapel innerhalb eines Stapels werden ignoriert.
+	 * @see ClientRequestProcessor#gibStapelGroesse(String)
+	 */
+	private void stapelAusfuehren(){
+		int anzahl = 0;
+		try {
+			anzahl = gibStapelGroesse(in.readLine());
+		} catch (IOException e) {
+			System.out.println("--->Fehler beim Lesen vom Client (Stapelgroesse): ");
+			System.out.println(e.getMessage());
+		}
+		if (imStapel)
+			return;
+		
+		imStapel = true;
+		try {
+			for (int i = 0; i < anzahl; i++) {
+				String aktion = in.readLine();
+				if (aktion == null)
+					break;
+				Kommando kommando = kommandos.gibKommando(aktion);
+				if (kommando != null)
+					kommando.ausfuehren(this);
+			}
+		} catch (IOException e) {
+			System.out.println("--->Fehler beim Lesen vom Client (Stapel): ");
+			System.out.println(e.getMessage());
+		} finally {
+			imStapel = false;
+		}
+	}
+	
+	/**
+	 * Wandelt die Zeile mit der Groesze eines Stapels in eine Zahl um.
+	 * Ungueltige oder negative Angaben ergeben einen leeren Stapel.
+	 * 
+	 * @param zeile
+	 * @return Anzahl der Aktionen im Stapel
+	 */
+	static int gibStapelGroesse(String zeile) {
+		try {
+			return Math.max(0, Integer.parseInt(zeile.trim()));
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Diese Methode empfaengt die vom Client gewuenschte Protokollversion und
+	 * stellt die Verbindung darauf um, falls der Server sie kennt. Als Antwort
+	 * wird die ab jetzt verwendete Version gesendet ("text" oder "bin1").
+	 * Die Aktion wird vom Client direkt nach der Begrueszung gesendet; alte
+	 * Clients senden sie nicht und bleiben beim Textprotokoll.
+	 * @see BinaerAntwortKodierer
+	 */
+	private void protokollAushandeln(){
+		String version = null;
+		try {
+			version = in.readLine();
+		} catch (IOException e) {
+			System.out.println("--->Fehler beim Lesen vom Client (Protokollversion): ");
+			System.out.println(e.getMessage());
+		}
+		
+		kodierer = erzeugeKodierer(version, out);
+		out.println(kodierer.gibVersion());
+	}
+	
+	/**
+	 * Erzeugt den Kodierer fuer eine Protokollversion. Unbekannte Versionen
+	 * ergeben das Textprotokoll.
+	 * 
+	 * @param version Name der Protokollversion
+	 * @param out Stream, in den der Kodierer schreibt
+	 * @return AntwortKodierer
+	 */
+	static AntwortKodierer erzeugeKodierer(String version, PrintStream out) {
+		if (BinaerAntwortKodierer.VERSION.equals(version))
+			return new BinaerAntwortKodierer(out);
+		return new TextAntwortKodierer(out);
+	}
+	
+	/**
+	 * Diese Methode sendet die Kennzahlen der Serverlast (Verbindungen, 
+	 * Warteschlange, Abweisungen) zum Client. Zuerst wird die Anzahl der
+	 * Kennzahlen gesendet, dann pro Zeile eine Kennzahl im Format "name=wert".
+	 */
+	private void gibServerStatistik(){
+		Map<String, Number> kennzahlen = kontrolle.gibKennzahlen();
+		if (aboVerteiler != null)
+			kennzahlen.putAll(aboVerteiler.gibKennzahlen());
+		kennzahlen.putAll(warenkorbAblauf.gibKennzahlen());
+		kennzahlen.putAll(sitzungen.gibKennzahlen());
+		Map<String, Long> aufrufe = kommandos.gibAufrufe();
+		out.println(kennzahlen.size() + aufrufe.size());
+		for (Map.Entry<String, Number> kennzahl : kennzahlen.entrySet()) {
+			out.println(kennzahl.getKey() + "=" + kennzahl.getValue());
+		}
+		// Aufrufe je Kommando, z.B. "aufrufe.gaasna=42"
+		for (Map.Entry<String, Long> aufruf : aufrufe.entrySet()) {
+			out.println("aufrufe." + aufruf.getKey() + "=" + aufruf.getValue());
+		}
+	}
+
+	/**
+	 * Verschiebt das Leeren des Warenkorbs des angemeldeten Kunden, wenn dieser
+	 * Artikel enthaelt, und bricht es sonst ab.
+	 */
+	private void warenkorbAblaufAktualisieren(){
+		if (sitzung == null)
+			return;
+		if (sitzung.gibWarenkorb() != null && sitzung.gibWarenkorb().size() != 0)
+			warenkorbAblauf.planen(sitzung.gibKunde());
+		else
+			warenkorbAblauf.abbrechen(sitzung.gibKunde());
 	}
 	
-	private void disconnect() {
+	private void warenkorbAblaufAbbrechen(){
+		if (sitzung != null)
+			warenkorbAblauf.abbrechen(sitzung.gibKunde());
+	}
+	
+	/**
+	 * Gibt den Kunden zu einer vom Client gesendeten ID zurueck. Gehoert die ID
+	 * zum angemeldeten Kunden, wird er aus der Sitzung genommen, sonst wird er
+	 * in der Kundenverwaltung gesucht. Auch der Kunde aus der Sitzung wird ueber
+	 * den Index der Kundenverwaltung geprueft: wurde er inzwischen geloescht,
+	 * wird die Sitzung beendet.
+	 * 
+	 * @param id ID des Kunden, wie sie vom Client gelesen wurde
+	 * @return Kunde
+	 * @throws KundeExistiertNichtException
+	 */
+	private Kunde gibKunde(String id) throws KundeExistiertNichtException {
+		if (sitzung != null && sitzung.gehoertZu(id)) {
+			Kunde kunde = sitzung.gibKunde();
+			try {
+				if (shop.sucheKunde(kunde.getId()) == kunde) {
+					sitzung.befehlAusgefuehrt();
+					return kunde;
+				}
+			} catch (KundeExistiertNichtException e) {
+				warenkorbAblaufAbbrechen();
+				sitzungBeenden();
+				throw e;
+			}
+			// unter derselben ID steht inzwischen ein anderer Kunde
+			warenkorbAblaufAbbrechen();
+			sitzungBeenden();
+			throw new KundeExistiertNichtException(kunde.getId(), "");
+		}
+		sitzungen.kundeGesucht();
+		return shop.sucheKunde(Integer.parseInt(id));
+	}
+	
+	private void sitzungBeenden(){
+		if (sitzung != null) {
+			sitzungen.beenden(sitzung);
+			sitzung = null;
+		}
+	}
+	
+	/**
+	 * Weist die Verbindung ab, weil der Thread-Pool ueberlastet ist. Der Client
+	 * erhaelt statt der Begrueszung die Antwort "ServerBusy".
+	 */
+	void abweisen() {
+		try {
+			out.println(Zulassungskontrolle.SERVER_BUSY);
+			out.flush();
+			kontrolle.verbindungBeendet();
+			if (clientSocket != null)
+				clientSocket.close();
+			System.out.println("Verbindung zu " + gegenstelle + " abgewiesen (Server ausgelastet)");
+		} catch (IOException e) {
+			System.out.println("--->Fehler beim Abweisen der Verbindung: ");
+			System.out.println(e.getMessage());
+		}
+	}
+	
+	void disconnect() {
 		try {
 			out.println("Tschuess!");
-//			activeClients.remove(clientUpdateSocket);
-			clientSocket.close();
+			out.flush();
+			sitzungBeenden();
+			kontrolle.verbindungBeendet();
+			if (clientSocket != null)
+				clientSocket.close();
 
-			System.out.println("Verbindung zu " + clientSocket.getInetAddress()
-					+ ":" + clientSocket.getPort() + " durch Client abgebrochen");
+			System.out.println("Verbindung zu " + gegenstelle + " durch Client abgebrochen");
 		} catch (Exception e) {
 			System.out.println("--->Fehler beim Beenden der Verbindung: ");
 			System.out.println(e.getMessage());
@@ -0,0 +1,74 @@
+package shop.server.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import shop.server.domain.KatalogSnapshot;
+
+/**
+ * Klasse zum Zwischenspeichern der fertig kodierten Antworten auf "gaasna"
+ * und "gaasnb".
+ * 
+ * Fuer jede Kombination aus Sortierung und Protokollversion wird die Antwort
+ * zum letzten Snapshot des Artikelbestands aufbewahrt. Solange sich der
+ * Bestand nicht aendert, werden die Bytes unveraendert an alle Clients
+ * gesendet, ohne die Artikel erneut zu kopieren, sortieren oder formatieren.
+ * 
+ * @see shop.server.domain.ArtikelVerwaltung#getSnapshot()
+ */
+class KatalogCache {
+
+	/**
+	 * Kodierte Antwort zu einer Version des Artikelbestands.
+	 */
+	private static class Eintrag {
+		private final long version;
+		private final byte[] daten;
+
+		Eintrag(long version, byte[] daten) {
+			this.version = version;
+			this.daten = daten;
+		}
+	}
+
+	private ConcurrentMap<String, Eintrag> eintraege = new ConcurrentHashMap<String, Eintrag>();
+
+	/**
+	 * Gibt die kodierte Artikelliste eines Snapshots zurueck. Das Ergebnis darf
+	 * nicht veraendert werden.
+	 * 
+	 * @param snapshot aktueller Snapshot des Artikelbestands
+	 * @param nachBezeichnung true fuer die Sortierung nach Bezeichnung, sonst nach Artikelnummer
+	 * @param protokoll Protokollversion der Verbindung (siehe AntwortKodierer.gibVersion())
+	 * @return Antwort, wie sie an den Client gesendet wird
+	 */
+	byte[] gibArtikelListe(KatalogSnapshot snapshot, boolean nachBezeichnung, String protokoll) {
+		String schluessel = (nachBezeichnung ? "gaasnb/" : "gaasna/") + protokoll;
+		Eintrag eintrag = eintraege.get(schluessel);
+		if (eintrag != null && eintrag.version == snapshot.getVersion())
+			return eintrag.daten;
+
+		ByteArrayOutputStream puffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(puffer);
+		AntwortKodierer kodierer = ClientRequestProcessor.erzeugeKodierer(protokoll, out);
+		kodierer.sendeArtikel(nachBezeichnung ? snapshot.getArtikelSortiertNachBezeichnung() : snapshot.getArtikelSortiertNachArtikelnummer());
+		out.flush();
+		byte[] daten = puffer.toByteArray();
+
+		// Einen Eintrag zu einer neueren Version nicht ueberschreiben
+		Eintrag neu = new Eintrag(snapshot.getVersion(), daten);
+		while (true) {
+			eintrag = eintraege.get(schluessel);
+			if (eintrag == null) {
+				if (eintraege.putIfAbsent(schluessel, neu) == null)
+					break;
+			} else if (eintrag.version >= neu.version || eintraege.replace(schluessel, eintrag, neu)) {
+				break;
+			}
+		}
+		return daten;
+	}
+
+}
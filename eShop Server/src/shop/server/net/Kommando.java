@@ -0,0 +1,22 @@
+package shop.server.net;
+
+/**
+ * Schnittstelle fuer die Bearbeitung einer Aktion des Protokolls. Zu jedem
+ * Kennzeichen einer Aktion (z.B. "gaasna") gibt es genau ein Kommando-Objekt,
+ * das in der KommandoRegistry hinterlegt ist und von allen Verbindungen
+ * gemeinsam benutzt wird. Ein Kommando darf deshalb keinen eigenen Zustand
+ * haben; der Zustand der Verbindung steckt im ClientRequestProcessor.
+ * 
+ * @see KommandoRegistry
+ */
+interface Kommando {
+
+	/**
+	 * Liest die Parameter der Aktion vom Client, fuehrt sie aus und sendet
+	 * die Antwort.
+	 * 
+	 * @param processor ClientRequestProcessor der Verbindung, auf der die Aktion angefordert wurde
+	 */
+	public void ausfuehren(ClientRequestProcessor processor);
+
+}
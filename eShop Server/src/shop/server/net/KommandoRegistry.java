@@ -0,0 +1,90 @@
+package shop.server.net;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Klasse zur Zuordnung der Kennzeichen des Protokolls zu ihren Kommandos.
+ * 
+ * Die Registry wird einmal beim Start des Servers aufgebaut und von allen
+ * Verbindungen gemeinsam benutzt. Ein Kennzeichen wird mit einem einzigen
+ * Hash-Zugriff aufgeloest, unabhaengig davon, wie viele Kommandos registriert
+ * sind. Neue Kommandos koennen jederzeit mit registriere() hinzugefuegt werden.
+ * Fuer jedes Kommando wird gezaehlt, wie oft es aufgerufen wurde.
+ * 
+ * @see Kommando
+ */
+class KommandoRegistry {
+
+	/**
+	 * Eintrag der Registry: das Kommando, die Anzahl der Parameterzeilen, die
+	 * der Client nach dem Kennzeichen sendet, und der Aufrufzaehler.
+	 */
+	private static class Eintrag {
+		private Kommando kommando;
+		private int parameterAnzahl;
+		private AtomicLong aufrufe = new AtomicLong(0);
+
+		Eintrag(Kommando kommando, int parameterAnzahl) {
+			this.kommando = kommando;
+			this.parameterAnzahl = parameterAnzahl;
+		}
+	}
+
+	private Map<String, Eintrag> kommandos = new ConcurrentHashMap<String, Eintrag>();
+
+	/**
+	 * Registriert ein Kommando unter dem angegebenen Kennzeichen. Ein bereits
+	 * registriertes Kommando mit demselben Kennzeichen wird ersetzt.
+	 * 
+	 * @param kennzeichen Kennzeichen der Aktion im Protokoll
+	 * @param parameterAnzahl Anzahl der Parameterzeilen, die auf das Kennzeichen folgen
+	 * @param kommando
+	 */
+	void registriere(String kennzeichen, int parameterAnzahl, Kommando kommando) {
+		kommandos.put(kennzeichen, new Eintrag(kommando, parameterAnzahl));
+	}
+
+	/**
+	 * Gibt das Kommando zu einem Kennzeichen zurueck und zaehlt den Aufruf.
+	 * 
+	 * @param kennzeichen
+	 * @return Kommando, oder null wenn das Kennzeichen unbekannt ist
+	 */
+	Kommando gibKommando(String kennzeichen) {
+		Eintrag eintrag = kommandos.get(kennzeichen);
+		if (eintrag == null)
+			return null;
+		eintrag.aufrufe.incrementAndGet();
+		return eintrag.kommando;
+	}
+
+	/**
+	 * Gibt die Anzahl der Parameterzeilen zurueck, die zu einem Kennzeichen
+	 * gehoeren. Unbekannte Kennzeichen haben keine Parameter.
+	 * 
+	 * @param kennzeichen
+	 * @return Anzahl der Parameterzeilen
+	 */
+	int gibParameterAnzahl(String kennzeichen) {
+		Eintrag eintrag = kommandos.get(kennzeichen);
+		return eintrag != null ? eintrag.parameterAnzahl : 0;
+	}
+
+	/**
+	 * Gibt fuer jedes registrierte Kennzeichen die Anzahl seiner bisherigen
+	 * Aufrufe zurueck.
+	 * 
+	 * @return Aufrufe nach Kennzeichen (alphabetisch sortiert)
+	 */
+	Map<String, Long> gibAufrufe() {
+		Map<String, Long> aufrufe = new TreeMap<String, Long>();
+		for (Map.Entry<String, Eintrag> e : kommandos.entrySet()) {
+			aufrufe.put(e.getKey(), e.getValue().aufrufe.get());
+		}
+		return aufrufe;
+	}
+
+}
@@ -0,0 +1,432 @@
+package shop.server.net;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Nicht-blockierende Variante des ShopServers.
+ *
+ * Statt fuer jede Verbindung einen eigenen Thread zu starten, werden alle
+ * Verbindungen von wenigen I/O-Threads ueber je einen Selector bedient. Die
+ * I/O-Threads zerlegen den eingehenden Datenstrom in Zeilen und fassen das
+ * Kennzeichen einer Aktion mit ihren Parameterzeilen zu einer vollstaendigen
+ * Anfrage zusammen. Erst eine vollstaendige Anfrage wird an einen Worker-Thread
+ * uebergeben, der sie mit dem ClientRequestProcessor der Verbindung bearbeitet.
+ * Die Antwort wird gepuffert und anschlieszend wieder vom I/O-Thread geschrieben.
+ *
+ * Eine Verbindung belegt somit nur noch dann einen Thread, wenn sie gerade eine
+ * Anfrage bearbeiten laesst. Verbindungen und Anfragen, die die Zulassungskontrolle
+ * abweist, werden mit Zulassungskontrolle.SERVER_BUSY beantwortet.
+ */
+class NioShopServer {
+
+	private static final int LESEPUFFER_GROESSE = 4096;
+	// Laengste zulaessige Zeile in Bytes; keine gueltige Anfrage kommt dem nahe
+	static final int MAX_ZEILENLAENGE = 64 * 1024;
+
+	private ServerSocketChannel serverChannel;
+	private IoSchleife[] ioSchleifen;
+	private ServerKontext kontext;
+	private Zulassungskontrolle kontrolle;
+	private KommandoRegistry kommandos;
+	private Charset zeichensatz = Charset.defaultCharset();
+
+	/**
+	 * Konstruktor des nicht-blockierenden Servers.
+	 *
+	 * @param serverChannel bereits gebundener Server-Kanal
+	 * @param ioThreads Anzahl der Selector-Threads
+	 * @param kontext Kontext des Servers; dessen Zulassungskontrolle bearbeitet die 
+	 *                Anfragen in ihrem Thread-Pool, dessen Kommandos liefern die 
+	 *                Anzahl der Parameterzeilen
+	 * @throws IOException
+	 */
+	NioShopServer(ServerSocketChannel serverChannel, int ioThreads, ServerKontext kontext) throws IOException {
+		this.serverChannel = serverChannel;
+		this.kontext = kontext;
+		kontrolle = kontext.gibKontrolle();
+		kommandos = kontext.gibKommandos();
+
+		ioSchleifen = new IoSchleife[ioThreads];
+		for (int i = 0; i < ioThreads; i++) {
+			ioSchleifen[i] = new IoSchleife();
+			Thread t = new Thread(ioSchleifen[i], "NioShopServer-IO-" + i);
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Nimmt Verbindungswuensche entgegen und verteilt die neuen Verbindungen
+	 * reihum auf die I/O-Threads. Ist die maximale Anzahl an Verbindungen
+	 * erreicht, wird die Verbindung mit SERVER_BUSY abgewiesen.
+	 *
+	 * @throws IOException
+	 */
+	void acceptClientConnectRequests() throws IOException {
+		int naechsteSchleife = 0;
+		while (true) {
+			SocketChannel kanal = serverChannel.accept();
+			if (!kontrolle.verbindungZulassen()) {
+				// Kanal ist hier noch blockierend, die kurze Antwort passt in den Socket-Puffer
+				kanal.write(ByteBuffer.wrap((Zulassungskontrolle.SERVER_BUSY + "\n").getBytes(zeichensatz.name())));
+				kanal.close();
+				continue;
+			}
+			kanal.configureBlocking(false);
+			ioSchleifen[naechsteSchleife].registriere(kanal);
+			naechsteSchleife = (naechsteSchleife + 1) % ioSchleifen.length;
+		}
+	}
+
+	/**
+	 * Ein I/O-Thread mit eigenem Selector. Alle Aenderungen an den Schluesseln
+	 * werden ueber die Auftragsliste im Selector-Thread selbst ausgefuehrt.
+	 */
+	private class IoSchleife implements Runnable {
+
+		private Selector selector;
+		private Queue<Runnable> auftraege = new ConcurrentLinkedQueue<Runnable>();
+
+		IoSchleife() throws IOException {
+			selector = Selector.open();
+		}
+
+		void registriere(final SocketChannel kanal) {
+			ausfuehren(new Runnable() {
+				public void run() {
+					try {
+						SelectionKey key = kanal.register(selector, SelectionKey.OP_READ);
+						Verbindung v = new Verbindung(kanal, key, IoSchleife.this);
+						key.attach(v);
+						v.verbunden();
+					} catch (ClosedChannelException e) {
+						System.err.println("Kanal wurde vor der Registrierung geschlossen: " + e);
+					}
+				}
+			});
+		}
+
+		void ausfuehren(Runnable auftrag) {
+			auftraege.add(auftrag);
+			selector.wakeup();
+		}
+
+		public void run() {
+			while (true) {
+				try {
+					selector.select();
+
+					Runnable auftrag;
+					while ((auftrag = auftraege.poll()) != null)
+						auftrag.run();
+
+					Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+					while (iter.hasNext()) {
+						SelectionKey key = iter.next();
+						iter.remove();
+						Verbindung v = (Verbindung) key.attachment();
+						try {
+							if (key.isValid() && key.isReadable())
+								v.lesen();
+							if (key.isValid() && key.isWritable())
+								v.schreiben();
+						} catch (IOException e) {
+							v.abbrechen(e);
+						}
+					}
+				} catch (IOException e) {
+					System.err.println("Fehler im Selector: " + e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Zustand einer einzelnen Client-Verbindung. Die Verbindung wird selbst als
+	 * Auftrag an die Worker uebergeben; es ist dabei immer hoechstens ein Worker
+	 * mit derselben Verbindung beschaeftigt, so dass die Anfragen eines Clients
+	 * in der Reihenfolge ihres Eintreffens bearbeitet werden.
+	 */
+	private class Verbindung implements Runnable {
+
+		private SocketChannel kanal;
+		private SelectionKey key;
+		private IoSchleife schleife;
+		private ClientRequestProcessor processor;
+		private PrintStream out;
+
+		// Eingabeseite (nur vom I/O-Thread benutzt)
+		private ByteBuffer lesePuffer = ByteBuffer.allocate(LESEPUFFER_GROESSE);
+		private ByteArrayOutputStream zeile = new ByteArrayOutputStream();
+		private List<String> rahmen = null;
+		// Parameterzeilen, die zur aktuellen Aktion noch fehlen
+		private int fehlendeZeilen = 0;
+		// Aktionen eines Stapels, die noch fehlen
+		private int fehlendeAktionen = 0;
+		private boolean stapelGroesseFehlt = false;
+
+		// vollstaendige Anfragen, die auf ihre Bearbeitung warten
+		private Queue<String[]> anfragen = new ConcurrentLinkedQueue<String[]>();
+		private AtomicBoolean inBearbeitung = new AtomicBoolean(false);
+		private volatile boolean beendet = false;
+
+		// Ausgabeseite
+		private LinkedList<ByteBuffer> schreibListe = new LinkedList<ByteBuffer>();
+		private boolean schliessenNachSchreiben = false;
+
+		Verbindung(SocketChannel kanal, SelectionKey key, IoSchleife schleife) {
+			this.kanal = kanal;
+			this.key = key;
+			this.schleife = schleife;
+			out = new PrintStream(new Ausgabe());
+			processor = new ClientRequestProcessor(out, kanal.socket().getInetAddress() + ":" + kanal.socket().getPort(), kontext);
+		}
+
+		void verbunden() {
+			processor.begruessen();
+			out.flush();
+		}
+
+		/**
+		 * Liest die verfuegbaren Daten und bildet daraus Zeilen bzw. Anfragen.
+		 *
+		 * @throws IOException auch, wenn eine Zeile MAX_ZEILENLAENGE ueberschreitet;
+		 *         die Verbindung wird dann abgebrochen
+		 */
+		void lesen() throws IOException {
+			int n = kanal.read(lesePuffer);
+			if (n == -1) {
+				// Client hat die Verbindung beendet: wie ein "quit" behandeln
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				anfrageEingetroffen(new String[] { "q" });
+				return;
+			}
+			lesePuffer.flip();
+			while (lesePuffer.hasRemaining()) {
+				byte b = lesePuffer.get();
+				if (b == '\n') {
+					byte[] bytes = zeile.toByteArray();
+					int laenge = bytes.length;
+					if (laenge > 0 && bytes[laenge - 1] == '\r')
+						laenge--;
+					zeileEingetroffen(new String(bytes, 0, laenge, zeichensatz));
+					zeile.reset();
+				} else {
+					if (zeile.size() >= MAX_ZEILENLAENGE) {
+						zeile.reset();
+						throw new IOException("Zeile laenger als " + MAX_ZEILENLAENGE + " Bytes");
+					}
+					zeile.write(b);
+				}
+			}
+			lesePuffer.clear();
+		}
+
+		/**
+		 * Ordnet eine Zeile der aktuellen Anfrage zu. Eine Anfrage besteht aus dem
+		 * Kennzeichen und den Parametern einer Aktion; bei einem Stapel aus dessen
+		 * Groesze und allen Aktionen des Stapels, damit der Stapel als Ganzes
+		 * bearbeitet und beantwortet wird.
+		 */
+		private void zeileEingetroffen(String text) {
+			if (rahmen == null) {
+				rahmen = new ArrayList<String>();
+				rahmen.add(text);
+				fehlendeAktionen = 0;
+				stapelGroesseFehlt = text.equals(ClientRequestProcessor.STAPEL);
+				fehlendeZeilen = stapelGroesseFehlt ? 1 : kommandos.gibParameterAnzahl(text);
+			} else {
+				rahmen.add(text);
+				if (fehlendeZeilen > 0) {
+					fehlendeZeilen--;
+					if (stapelGroesseFehlt) {
+						stapelGroesseFehlt = false;
+						fehlendeAktionen = ClientRequestProcessor.gibStapelGroesse(text);
+					}
+				} else {
+					// Kennzeichen der naechsten Aktion im Stapel
+					fehlendeAktionen--;
+					fehlendeZeilen = kommandos.gibParameterAnzahl(text);
+				}
+			}
+			if (fehlendeZeilen == 0 && fehlendeAktionen == 0) {
+				anfrageEingetroffen(rahmen.toArray(new String[rahmen.size()]));
+				rahmen = null;
+			}
+		}
+
+		private void anfrageEingetroffen(String[] anfrage) {
+			anfragen.add(anfrage);
+			if (inBearbeitung.compareAndSet(false, true) && !kontrolle.ausfuehren(this))
+				abweisen();
+		}
+
+		/**
+		 * Beantwortet alle wartenden Anfragen mit SERVER_BUSY, weil die
+		 * Warteschlange des Thread-Pools voll ist. Ein "quit" wird trotzdem
+		 * ausgefuehrt, damit die Verbindung ordentlich beendet wird.
+		 */
+		private void abweisen() {
+			String[] anfrage;
+			while ((anfrage = anfragen.poll()) != null) {
+				if (beendet)
+					continue;
+				if (anfrage[0].equals("q")) {
+					processor.disconnect();
+					beendet = true;
+				} else {
+					out.println(Zulassungskontrolle.SERVER_BUSY);
+				}
+			}
+			out.flush();
+			if (beendet)
+				schliessen();
+			inBearbeitung.set(false);
+		}
+
+		/**
+		 * Bearbeitung der wartenden Anfragen in einem Worker-Thread. Wirft die
+		 * Bearbeitung einer Anfrage eine Ausnahme (z.B. bei einem fehlerhaften
+		 * Parameter), wird die Verbindung beendet, da der Client auf eine
+		 * vollstaendige Antwort wartet.
+		 */
+		public void run() {
+			do {
+				try {
+					String[] anfrage;
+					while ((anfrage = anfragen.poll()) != null) {
+						if (beendet)
+							continue;
+						StringBuilder parameter = new StringBuilder();
+						for (int i = 1; i < anfrage.length; i++)
+							parameter.append(anfrage[i]).append('\n');
+						processor.setzeEingabe(new BufferedReader(new StringReader(parameter.toString())));
+						boolean weiter;
+						try {
+							weiter = processor.bearbeiteAnfrage(anfrage[0]);
+						} catch (RuntimeException e) {
+							System.err.println("Fehler bei der Bearbeitung der Anfrage \"" + anfrage[0] + "\" von " + kanal.socket().getRemoteSocketAddress() + ": " + e);
+							weiter = false;
+						}
+						if (!weiter) {
+							processor.disconnect();
+							beendet = true;
+						}
+					}
+				} finally {
+					out.flush();
+					if (beendet)
+						schliessen();
+					inBearbeitung.set(false);
+				}
+			} while (!anfragen.isEmpty() && inBearbeitung.compareAndSet(false, true));
+		}
+
+		/**
+		 * Uebergibt eine fertige Antwort an den I/O-Thread.
+		 */
+		void senden(ByteBuffer daten) {
+			synchronized (this) {
+				schreibListe.add(daten);
+			}
+			schleife.ausfuehren(new Runnable() {
+				public void run() {
+					if (key.isValid())
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				}
+			});
+		}
+
+		void schliessen() {
+			synchronized (this) {
+				schliessenNachSchreiben = true;
+			}
+			schleife.ausfuehren(new Runnable() {
+				public void run() {
+					if (key.isValid())
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				}
+			});
+		}
+
+		/**
+		 * Schreibt so viel wie ohne Blockieren moeglich ist.
+		 */
+		void schreiben() throws IOException {
+			synchronized (this) {
+				while (!schreibListe.isEmpty()) {
+					ByteBuffer daten = schreibListe.getFirst();
+					kanal.write(daten);
+					if (daten.hasRemaining())
+						return;
+					schreibListe.removeFirst();
+				}
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+				if (schliessenNachSchreiben) {
+					key.cancel();
+					kanal.close();
+				}
+			}
+		}
+
+		void abbrechen(IOException e) {
+			System.err.println("Verbindungsfehler: " + e);
+			key.cancel();
+			try {
+				kanal.close();
+			} catch (IOException e2) {
+				System.err.println("Ausnahme bei Schliessung des Kanals: " + e2);
+			}
+			// Aufraeumen wie bei einem "quit" des Clients
+			anfrageEingetroffen(new String[] { "q" });
+		}
+
+		/**
+		 * Sammelt die Ausgabe des ClientRequestProcessors, bis sie mit flush()
+		 * als Ganzes an den I/O-Thread uebergeben wird.
+		 */
+		private class Ausgabe extends OutputStream {
+
+			private ByteArrayOutputStream puffer = new ByteArrayOutputStream();
+
+			@Override
+			public void write(int b) {
+				puffer.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				puffer.write(b, off, len);
+			}
+
+			@Override
+			public void flush() {
+				if (puffer.size() > 0) {
+					senden(ByteBuffer.wrap(puffer.toByteArray()));
+					puffer.reset();
+				}
+			}
+		}
+	}
+
+}
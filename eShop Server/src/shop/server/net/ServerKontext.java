@@ -0,0 +1,71 @@
+package shop.server.net;
+
+import shop.server.domain.ShopVerwaltung;
+
+/**
+ * Klasse fuer die Objekte, die sich alle Verbindungen eines Servers teilen.
+ * Der Kontext wird einmal beim Start des Servers erzeugt und jedem
+ * ClientRequestProcessor uebergeben.
+ */
+class ServerKontext {
+
+	// Shopverwaltungsobjekt, das die eigentliche Arbeit machen soll
+	private ShopVerwaltung shop;
+	// Begrenzung und Kennzahlen der Serverlast
+	private Zulassungskontrolle kontrolle;
+	// Kommandos des Protokolls
+	private KommandoRegistry kommandos;
+	// fertig kodierte Artikellisten
+	private KatalogCache katalogCache = new KatalogCache();
+	// Benachrichtigung der Clients ueber Aenderungen am Artikelbestand (kann null sein)
+	private AboVerteiler aboVerteiler;
+	// Leeren verlassener Warenkoerbe
+	private WarenkorbAblauf warenkorbAblauf;
+	// Sitzungen der angemeldeten Kunden
+	private Sitzungen sitzungen = new Sitzungen();
+
+	/**
+	 * Konstruktor des Serverkontexts.
+	 * 
+	 * @param shop
+	 * @param kontrolle
+	 * @param kommandos
+	 * @param aboVerteiler Verteiler fuer Aktualisierungen, oder null wenn der Server keine sendet
+	 */
+	ServerKontext(ShopVerwaltung shop, Zulassungskontrolle kontrolle, KommandoRegistry kommandos, AboVerteiler aboVerteiler) {
+		this.shop = shop;
+		this.kontrolle = kontrolle;
+		this.kommandos = kommandos;
+		this.aboVerteiler = aboVerteiler;
+		this.warenkorbAblauf = new WarenkorbAblauf(shop);
+	}
+
+	ShopVerwaltung gibShop() {
+		return shop;
+	}
+
+	Zulassungskontrolle gibKontrolle() {
+		return kontrolle;
+	}
+
+	KommandoRegistry gibKommandos() {
+		return kommandos;
+	}
+
+	KatalogCache gibKatalogCache() {
+		return katalogCache;
+	}
+
+	AboVerteiler gibAboVerteiler() {
+		return aboVerteiler;
+	}
+
+	WarenkorbAblauf gibWarenkorbAblauf() {
+		return warenkorbAblauf;
+	}
+
+	Sitzungen gibSitzungen() {
+		return sitzungen;
+	}
+
+}
@@ -1,11 +1,16 @@
 package shop.server.net;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Vector;
 
-import shop.common.interfaces.ShopInterface;
 import shop.server.domain.ShopVerwaltung;
 
 /**
@@ -17,18 +22,59 @@ import shop.server.domain.ShopVerwaltung;
  * uebernimmt. 
  * Danach wartet der Server weiter auf Verbindungen und wiederholt den obigen
  * Prozess. 
+ * 
+ * Mit der Option "-nio" werden die Verbindungen stattdessen nicht-blockierend
+ * von wenigen I/O-Threads bedient (siehe NioShopServer). Mit der Option
+ * "-virtuell" wird jede Verbindung wie bisher blockierend, aber von einem
+ * virtuellen Thread bedient (ab Java 21).
+ * 
+ * Die Last wird in allen Betriebsarten durch eine Zulassungskontrolle begrenzt:
+ * Verbindungen ueber "-maxverbindungen=N" hinaus und Auftraege, die nicht mehr
+ * in die Warteschlange ("-warteschlange=N") des Thread-Pools ("-threads=N")
+ * passen, werden mit "ServerBusy" abgewiesen. In der Betriebsart THREAD gibt es
+ * keine Warteschlange und hoechstens so viele Verbindungen wie Threads.
+ * 
+ * Ueber den Update-Port werden die Clients ueber Aenderungen am Artikelbestand
+ * benachrichtigt (siehe AboVerteiler).
  *  
  */
 public class ShopServer { 					
 	
+	/**
+	 * Betriebsarten des Servers:
+	 * THREAD   - jede Verbindung wird von einem eigenen Thread bedient
+	 * VIRTUELL - jede Verbindung wird von einem eigenen virtuellen Thread bedient
+	 * NIO      - alle Verbindungen werden ueber Selector-Threads bedient
+	 */
+	public enum Betriebsart { THREAD, VIRTUELL, NIO }
+	
 	public final static int DEFAULT_PORT = 6789;
-//	public final static int UPDATE_PORT = 6790;
+	public final static int UPDATE_PORT = 6790;
+	
+	// Thread-Anzahlen fuer die Betriebsart NIO
+	public final static int NIO_IO_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	public final static int NIO_WORKER_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+	
+	// Voreinstellungen der Zulassungskontrolle bei blockierenden Verbindungen,
+	// bei denen jede Verbindung fuer ihre ganze Dauer einen Thread des Pools belegt:
+	// nie mehr Verbindungen als Threads und keine Warteschlange, in der eine
+	// Verbindung ohne Antwort auf einen freien Thread warten muesste
+	public final static int DEFAULT_MAX_VERBINDUNGEN = 500;
+	public final static int DEFAULT_THREADS = 500;
+	public final static int DEFAULT_WARTESCHLANGE = 0;
+	// Voreinstellungen, wenn Verbindungen keine Pool-Threads belegen (NIO, VIRTUELL)
+	public final static int DEFAULT_MAX_VERBINDUNGEN_OHNE_THREAD = 10000;
+	public final static int DEFAULT_WARTESCHLANGE_NIO = 1000;
 
 	protected int port;
-//	protected int updatePort;
+	protected int updatePort;
+	protected ServerSocketChannel serverChannel;
 	protected ServerSocket serverSocket;
-	private ShopInterface shop; 
-	//private Vector<Socket> activeClients;
+	private Betriebsart betriebsart;
+	// Thread.startVirtualThread(Runnable), falls die Laufzeitumgebung virtuelle Threads kennt
+	private Method startVirtualThread;
+	// Shopverwaltung, Zulassungskontrolle und Kommandos (von allen Verbindungen gemeinsam benutzt)
+	private ServerKontext kontext;
 
 	/**
 	 * Konstruktor zur Erzeugung des Shopservers.
@@ -38,29 +84,102 @@ public class ShopServer {
 	 * @throws IOException
 	 */
 	public ShopServer(int port, int updatePort) throws IOException {
+		this(port, updatePort, Betriebsart.THREAD);
+	}
+	
+	/**
+	 * Konstruktor zur Erzeugung des Shopservers mit einer bestimmten Betriebsart.
+	 * 
+	 * @param port Portnummer, auf der auf Verbindungen gewartet werden soll
+	 *             (wenn 0, wird Default-Port verwendet)
+	 * @param betriebsart Art, wie die Verbindungen bedient werden
+	 * @throws IOException
+	 */
+	public ShopServer(int port, int updatePort, Betriebsart betriebsart) throws IOException {
+		this(port, updatePort, betriebsart, 0, 0, 0);
+	}
+	
+	/**
+	 * Konstruktor zur Erzeugung des Shopservers mit einer bestimmten Betriebsart
+	 * und eigenen Grenzen fuer die Zulassungskontrolle.
+	 * 
+	 * @param port Portnummer, auf der auf Verbindungen gewartet werden soll
+	 *             (wenn 0, wird Default-Port verwendet)
+	 * @param updatePort Portnummer, ueber die Aenderungen am Artikelbestand an die
+	 *             Clients gesendet werden (wenn 0, wird UPDATE_PORT verwendet)
+	 * @param betriebsart Art, wie die Verbindungen bedient werden
+	 * @param maxVerbindungen maximale Anzahl gleichzeitiger Verbindungen (wenn 0, Voreinstellung)
+	 * @param threads Groesze des Thread-Pools (wenn 0, Voreinstellung)
+	 * @param warteschlange Laenge der Warteschlange des Thread-Pools (wenn 0, Voreinstellung)
+	 * @throws IOException
+	 */
+	public ShopServer(int port, int updatePort, Betriebsart betriebsart, int maxVerbindungen, int threads, int warteschlange) throws IOException {
+		
+		ShopVerwaltung shop = new ShopVerwaltung(); 
+		
+		if (betriebsart == Betriebsart.VIRTUELL) {
+			// Das Projekt wird fuer aeltere Java-Versionen uebersetzt, daher
+			// wird die Methode zur Laufzeit gesucht
+			try {
+				startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+			} catch (NoSuchMethodException e) {
+				System.err.println("Virtuelle Threads werden von dieser Java-Version nicht unterstuetzt, verwende " + Betriebsart.THREAD);
+				betriebsart = Betriebsart.THREAD;
+			}
+		}
+		this.betriebsart = betriebsart;
 		
-		shop = new ShopVerwaltung(); 
-//		activeClients = new Vector<Socket>();
+		boolean blockierend = betriebsart == Betriebsart.THREAD;
+		if (maxVerbindungen == 0)
+			maxVerbindungen = blockierend ? DEFAULT_MAX_VERBINDUNGEN : DEFAULT_MAX_VERBINDUNGEN_OHNE_THREAD;
+		if (threads == 0)
+			threads = blockierend ? DEFAULT_THREADS : NIO_WORKER_THREADS;
+		if (blockierend) {
+			if (warteschlange != 0)
+				System.err.println("Option -warteschlange wird in der Betriebsart " + betriebsart + " ignoriert");
+			warteschlange = DEFAULT_WARTESCHLANGE;
+			if (maxVerbindungen > threads) {
+				System.err.println("Maximal " + threads + " Verbindungen, da jede Verbindung einen Thread belegt");
+				maxVerbindungen = threads;
+			}
+		} else if (warteschlange == 0) {
+			warteschlange = DEFAULT_WARTESCHLANGE_NIO;
+		}
 		
 		if (port == 0)
 			port = DEFAULT_PORT;
 		this.port = port;
 		
-//		if (updatePort == 0)
-//			updatePort = UPDATE_PORT;
-//		this.updatePort = updatePort;
+		if (updatePort == 0)
+			updatePort = UPDATE_PORT;
+		this.updatePort = updatePort;
 		
+		AboVerteiler aboVerteiler = null;
 		try {
-			// Server-Socket anlegen
-			serverSocket = new ServerSocket(port);
+			// Server-Socket anlegen (ueber einen Kanal, damit er auch
+			// nicht-blockierend bedient werden kann)
+			serverChannel = ServerSocketChannel.open();
+			serverSocket = serverChannel.socket();
+			serverSocket.bind(new InetSocketAddress(port));
+			
+			// Update-Port, ueber den die Clients Aenderungen am Artikelbestand erhalten
+			ServerSocketChannel updateChannel = ServerSocketChannel.open();
+			updateChannel.socket().bind(new InetSocketAddress(updatePort));
+			aboVerteiler = new AboVerteiler(updateChannel, shop, maxVerbindungen);
+			Thread t = new Thread(aboVerteiler, "AboVerteiler");
+			t.setDaemon(true);
+			t.start();
 						
 			// Serverdaten ausgeben
 			InetAddress ia = InetAddress.getLocalHost();
 			System.out.println("Host: " + ia.getHostName());
-			System.out.println("Server *" + ia.getHostAddress()	+ "* lauscht auf Port " + port);
+			System.out.println("Server *" + ia.getHostAddress()	+ "* lauscht auf Port " + port + " (" + betriebsart + ")");
+			System.out.println("Aktualisierungen auf Port " + updatePort);
 		} catch (IOException e) {
 			fail(e, "Eine Ausnahme trat beim Anlegen des Server-Sockets auf");
 		}
+		
+		kontext = new ServerKontext(shop, new Zulassungskontrolle(maxVerbindungen, threads, warteschlange), ClientRequestProcessor.erzeugeKommandos(), aboVerteiler);
 	}
 
 	/**
@@ -68,29 +187,106 @@ public class ShopServer {
 	 * Die Methode fragt wiederholt ab, ob Verbindungsanfragen vorliegen
 	 * und erzeugt dann jeweils ein ClientRequestProcessor-Objekt mit dem 
 	 * fuer diese Verbindung erzeugten Client-Socket.
+	 * Verbindungen, die die Zulassungskontrolle abweist, erhalten die Antwort
+	 * "ServerBusy" und werden sofort wieder geschlossen.
 	 */
 	public void acceptClientConnectRequests() {
 		try {
+			if (betriebsart == Betriebsart.NIO) {
+				new NioShopServer(serverChannel, NIO_IO_THREADS, kontext).acceptClientConnectRequests();
+				return;
+			}
 			while (true) {
 				Socket clientSocket = serverSocket.accept();
-//				ClientRequestProcessor c = new ClientRequestProcessor(activeClients, updatePort, clientSocket, shop);
-				ClientRequestProcessor c = new ClientRequestProcessor(clientSocket, shop);
-				Thread t = new Thread(c);
-				t.start();
+				if (!kontext.gibKontrolle().verbindungZulassen()) {
+					abweisen(clientSocket);
+					continue;
+				}
+				ClientRequestProcessor c = new ClientRequestProcessor(clientSocket, kontext);
+				starteThread(c);
 			}
 		} catch (IOException e) {
 			fail(e, "Fehler whrend des Lauschens auf Verbindungen");
 		}
 	}
 	
+	/**
+	 * Sendet einer nicht zugelassenen Verbindung "ServerBusy" und schlieszt sie.
+	 * 
+	 * @param clientSocket
+	 */
+	private void abweisen(Socket clientSocket) {
+		try {
+			PrintStream out = new PrintStream(clientSocket.getOutputStream());
+			out.println(Zulassungskontrolle.SERVER_BUSY);
+			out.flush();
+			clientSocket.close();
+		} catch (IOException e) {
+			System.err.println("Ausnahme beim Abweisen der Verbindung: " + e);
+		}
+	}
+	
+	/**
+	 * Startet den Thread, der eine Verbindung bedient. Je nach Betriebsart ist
+	 * dies ein virtueller Thread oder ein Thread aus dem Pool der 
+	 * Zulassungskontrolle. Ist kein Thread des Pools frei, wird die Verbindung
+	 * abgewiesen.
+	 * 
+	 * @param c ClientRequestProcessor der Verbindung
+	 */
+	private void starteThread(ClientRequestProcessor c) {
+		if (startVirtualThread != null) {
+			try {
+				startVirtualThread.invoke(null, c);
+				return;
+			} catch (IllegalAccessException e) {
+				System.err.println("Virtueller Thread konnte nicht gestartet werden: " + e);
+			} catch (InvocationTargetException e) {
+				System.err.println("Virtueller Thread konnte nicht gestartet werden: " + e.getCause());
+			}
+		}
+		if (!kontext.gibKontrolle().ausfuehren(c))
+			c.abweisen();
+	}
+	
 	/**
 	 * main()-Methode zum Starten des Servers
 	 * 
-	 * @param args kann optional Portnummer enthalten, auf der Verbindungen entgegengenommen werden sollen
+	 * @param args kann optional Portnummer enthalten, auf der Verbindungen entgegengenommen werden sollen,
+	 *             sowie die Optionen "-nio" fuer die nicht-blockierende Betriebsart oder
+	 *             "-virtuell" fuer virtuelle Threads und die Grenzen der Zulassungskontrolle
+	 *             ("-maxverbindungen=N", "-threads=N", "-warteschlange=N")
 	 */
 	public static void main(String[] args) {
 		int port = 0;
 		int updatePort = 0;
+		Betriebsart betriebsart = Betriebsart.THREAD;
+		int maxVerbindungen = 0;
+		int threads = 0;
+		int warteschlange = 0;
+		
+		// Optionen von den Portnummern trennen
+		Vector<String> portArgs = new Vector<String>();
+		for (String arg : args) {
+			try {
+				if (arg.equals("-nio"))
+					betriebsart = Betriebsart.NIO;
+				else if (arg.equals("-virtuell"))
+					betriebsart = Betriebsart.VIRTUELL;
+				else if (arg.startsWith("-maxverbindungen="))
+					maxVerbindungen = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+				else if (arg.startsWith("-threads="))
+					threads = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+				else if (arg.startsWith("-warteschlange="))
+					warteschlange = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+				else
+					portArgs.add(arg);
+			} catch (NumberFormatException e) {
+				System.err.println("Ungueltige Option " + arg + " wird ignoriert");
+			}
+		}
+		args = portArgs.toArray(new String[portArgs.size()]);
+		
 		if (args.length == 1) {
 			try {
 				port = Integer.parseInt(args[0]);
@@ -108,7 +304,7 @@ public class ShopServer {
 			}
 		}
 		try {
-			ShopServer server = new ShopServer(port, updatePort);
+			ShopServer server = new ShopServer(port, updatePort, betriebsart, maxVerbindungen, threads, warteschlange);
 			server.acceptClientConnectRequests();
 		} catch (IOException e) {
 			e.printStackTrace();
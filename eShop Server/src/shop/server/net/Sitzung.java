@@ -0,0 +1,71 @@
+package shop.server.net;
+
+import java.util.List;
+
+import shop.common.valueobjects.Kunde;
+import shop.common.valueobjects.WarenkorbArtikel;
+
+/**
+ * Sitzung eines angemeldeten Kunden auf einer Verbindung.
+ *
+ * Die Sitzung wird beim Login (Aktion "pl") an die Verbindung gebunden und
+ * haelt den Kunden mit seinem Warenkorb. Die Warenkorb-Aktionen senden die ID
+ * des Kunden weiterhin mit; stimmt sie mit der ID der Sitzung ueberein, wird
+ * der Kunde der Sitzung ohne Umwandlung der ID verwendet. Vor jeder Aktion
+ * wird ueber den Index der Kundenverwaltung in konstanter Zeit geprueft, ob
+ * der Kunde noch existiert; wurde er inzwischen geloescht, wird die Sitzung
+ * beendet.
+ */
+class Sitzung {
+
+	private final Kunde kunde;
+	// ID des Kunden so, wie der Client sie sendet
+	private final String kundenId;
+	private final long beginn = System.currentTimeMillis();
+	private long befehle = 0;
+
+	/**
+	 * Konstruktor einer Sitzung.
+	 *
+	 * @param kunde angemeldeter Kunde
+	 */
+	Sitzung(Kunde kunde) {
+		this.kunde = kunde;
+		this.kundenId = String.valueOf(kunde.getId());
+	}
+
+	/**
+	 * @param id ID des Kunden, wie sie vom Client gelesen wurde
+	 * @return true, wenn die ID zum Kunden der Sitzung gehoert
+	 */
+	boolean gehoertZu(String id) {
+		return kundenId.equals(id);
+	}
+
+	Kunde gibKunde() {
+		return kunde;
+	}
+
+	List<WarenkorbArtikel> gibWarenkorb() {
+		return kunde.getWarenkorb();
+	}
+
+	/**
+	 * Zaehlt eine Aktion, die ueber die Sitzung ausgefuehrt wurde.
+	 */
+	void befehlAusgefuehrt() {
+		befehle++;
+	}
+
+	long gibBefehle() {
+		return befehle;
+	}
+
+	/**
+	 * @return Dauer der Sitzung bis jetzt in Millisekunden
+	 */
+	long gibDauer() {
+		return System.currentTimeMillis() - beginn;
+	}
+
+}
@@ -0,0 +1,77 @@
+package shop.server.net;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shop.common.valueobjects.Kunde;
+
+/**
+ * Klasse zum Beginnen und Beenden der Sitzungen aller Verbindungen eines
+ * Servers. Sie fuehrt die Kennzahlen der Sitzungen, die mit der Aktion "sst"
+ * abgefragt werden koennen.
+ */
+class Sitzungen {
+
+	private AtomicInteger aktiveSitzungen = new AtomicInteger(0);
+	private AtomicLong begonneneSitzungen = new AtomicLong(0);
+	private AtomicLong beendeteSitzungen = new AtomicLong(0);
+	private AtomicLong dauerBeendeterSitzungen = new AtomicLong(0);
+	// Warenkorb-Aktionen, die den Kunden aus der Sitzung genommen haben (nur
+	// mit der Pruefung, ob er noch in der Kundenverwaltung steht)
+	private AtomicLong befehleAusSitzung = new AtomicLong(0);
+	// Warenkorb-Aktionen ohne passende Sitzung, fuer die die ID umgewandelt
+	// und der Kunde gesucht werden musste
+	private AtomicLong kundenGesucht = new AtomicLong(0);
+
+	/**
+	 * Beginnt eine Sitzung fuer einen angemeldeten Kunden.
+	 *
+	 * @param kunde
+	 * @return neue Sitzung
+	 */
+	Sitzung beginnen(Kunde kunde) {
+		aktiveSitzungen.incrementAndGet();
+		begonneneSitzungen.incrementAndGet();
+		return new Sitzung(kunde);
+	}
+
+	/**
+	 * Muss fuer jede begonnene Sitzung genau einmal aufgerufen werden.
+	 *
+	 * @param sitzung
+	 */
+	void beenden(Sitzung sitzung) {
+		aktiveSitzungen.decrementAndGet();
+		beendeteSitzungen.incrementAndGet();
+		dauerBeendeterSitzungen.addAndGet(sitzung.gibDauer());
+		befehleAusSitzung.addAndGet(sitzung.gibBefehle());
+	}
+
+	/**
+	 * Zaehlt eine Warenkorb-Aktion, fuer die es keine passende Sitzung gab und
+	 * der Kunde deshalb nach der umgewandelten ID gesucht wurde.
+	 */
+	void kundeGesucht() {
+		kundenGesucht.incrementAndGet();
+	}
+
+	/**
+	 * Gibt die Kennzahlen der Sitzungen zurueck. Die Aktionen laufender
+	 * Sitzungen werden erst beim Beenden der Sitzung mitgezaehlt.
+	 *
+	 * @return Kennzahlen nach Namen
+	 */
+	Map<String, Number> gibKennzahlen() {
+		Map<String, Number> kennzahlen = new LinkedHashMap<String, Number>();
+		long beendet = beendeteSitzungen.get();
+		kennzahlen.put("aktiveSitzungen", aktiveSitzungen.get());
+		kennzahlen.put("begonneneSitzungen", begonneneSitzungen.get());
+		kennzahlen.put("mittlereSitzungsdauer", beendet == 0 ? 0 : dauerBeendeterSitzungen.get() / beendet);
+		kennzahlen.put("befehleAusSitzung", befehleAusSitzung.get());
+		kennzahlen.put("kundenGesucht", kundenGesucht.get());
+		return kennzahlen;
+	}
+
+}
@@ -0,0 +1,95 @@
+package shop.server.net;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.List;
+
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Massengutartikel;
+import shop.common.valueobjects.Rechnung;
+import shop.common.valueobjects.WarenkorbArtikel;
+
+/**
+ * Kodierer fuer das urspruengliche Textprotokoll: jedes Feld wird in einer
+ * eigenen Zeile gesendet.
+ */
+class TextAntwortKodierer implements AntwortKodierer {
+
+	static final String VERSION = "text";
+
+	private PrintStream out;
+
+	TextAntwortKodierer(PrintStream out) {
+		this.out = out;
+	}
+
+	public String gibVersion() {
+		return VERSION;
+	}
+
+	public void sendeArtikel(List<Artikel> artikel) {
+		Iterator<Artikel> iter = artikel.iterator();
+		Artikel a = null;
+		// Anzahl der Artikel senden
+		out.println(artikel.size());
+		while (iter.hasNext()) {
+			a = iter.next();
+			sendeArtikel(a);
+		}
+	}
+
+	public void sendeWarenkorbArtikel(List<WarenkorbArtikel> warenkorbArtikel) {
+		Iterator<WarenkorbArtikel> iter = warenkorbArtikel.iterator();
+		WarenkorbArtikel wa = null;
+		// Anzahl der Warenkorb Artikel senden
+		out.println(warenkorbArtikel.size());
+		while (iter.hasNext()) {
+			wa = iter.next();
+			// Artikel des Warenkorb Artikels senden
+			sendeArtikel(wa.getArtikel());
+			// Stueckzahl des Warenkorb Artikels senden
+			out.println(wa.getStueckzahl());
+		}
+	}
+
+	public void sendeRechnung(Rechnung rechnung) {
+		// Datum der Rechnung senden
+		out.println(rechnung.getDatum());
+		// Warenkorb der Rechnung senden
+		sendeWarenkorbArtikel(rechnung.getWarenkorb());
+	}
+
+	public void sendeArtikelAenderungen(long version, boolean vollstaendig, List<Artikel> artikel, List<Integer> entfernt) {
+		out.println(vollstaendig ? "voll" : "delta");
+		out.println(version);
+		sendeArtikel(artikel);
+		out.println(entfernt.size());
+		for (Integer artikelnummer : entfernt) {
+			out.println(artikelnummer);
+		}
+	}
+
+	public void sendeFehler(String fehler) {
+		out.println(fehler);
+	}
+
+	private void sendeArtikel(Artikel a) {
+		// Artikeltyp des Artikels senden
+		if (a instanceof Massengutartikel)
+			out.println("Massengutartikel");
+		else 
+			out.println("Artikel");
+		// Nummer des Artikels senden
+		out.println(a.getArtikelnummer());
+		// Bezeichnung des Artikels senden
+		out.println(a.getBezeichnung());
+		// Preis des Artikels senden
+		out.println(a.getPreis());
+		// Bestand des Artikels senden
+		out.println(a.getBestand());
+		if (a instanceof Massengutartikel)
+			// Packungsgroesse des Massengutartikels senden
+			out.println(((Massengutartikel) a).getPackungsgroesse());
+	}
+
+}
@@ -0,0 +1,259 @@
+package shop.server.net;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
+import shop.common.valueobjects.Kunde;
+import shop.server.domain.ShopVerwaltung;
+
+/**
+ * Klasse zum Leeren verlassener Warenkoerbe fuer alle Verbindungen des Servers.
+ *
+ * Die Ablaufzeiten werden in einem Zeitrad (hashed timing wheel) verwaltet:
+ * jeder Kunde mit gefuelltem Warenkorb steht in genau einem Fach des Rads, das
+ * Fach ergibt sich aus seiner Ablaufzeit. Planen, Verschieben und Abbrechen
+ * kosten deshalb unabhaengig von der Anzahl der Kunden konstante Zeit. Ein
+ * einziger Thread rueckt das Rad in festen Schritten weiter und leert alle in
+ * einem Schritt abgelaufenen Warenkoerbe gemeinsam, ausserhalb der Sperre des
+ * Rads.
+ */
+class WarenkorbAblauf implements Runnable {
+
+	// Zeit ohne Aktivitaet, nach der ein Warenkorb geleert wird
+	static final long ABLAUFZEIT = 1000L * 60 * 15;
+	// Laenge eines Schritts des Rads, so genau wird die Ablaufzeit eingehalten
+	static final long SCHRITT = 1000L;
+	// Anzahl Faecher des Rads (Zweierpotenz)
+	static final int FAECHER = 1024;
+
+	private static final class Eintrag {
+		final Kunde kunde;
+		long ablaufSchritt;
+		Eintrag vorheriger;
+		Eintrag naechster;
+
+		Eintrag(Kunde kunde) {
+			this.kunde = kunde;
+		}
+	}
+
+	private ShopVerwaltung shop;
+	private long ablaufzeit;
+	private long schrittDauer;
+
+	// Faecher des Rads als doppelt verkettete Listen, Zugriff nur unter sperre
+	private Eintrag[] faecher;
+	private Map<Kunde, Eintrag> eintraege = new HashMap<Kunde, Eintrag>();
+	private Object sperre = new Object();
+	private long start;
+	private long aktuellerSchritt = 0;
+	private Thread thread = null;
+
+	private AtomicLong geleerteWarenkoerbe = new AtomicLong(0);
+
+	/**
+	 * Konstruktor mit der Ablaufzeit von 15 Minuten.
+	 *
+	 * @param shop
+	 */
+	WarenkorbAblauf(ShopVerwaltung shop) {
+		this(shop, ABLAUFZEIT, SCHRITT, FAECHER);
+	}
+
+	/**
+	 * Konstruktor des Zeitrads.
+	 *
+	 * @param shop Shopverwaltung, ueber die die Warenkoerbe geleert werden
+	 * @param ablaufzeit Zeit ohne Aktivitaet in Millisekunden
+	 * @param schrittDauer Laenge eines Schritts in Millisekunden
+	 * @param faecher Anzahl Faecher (wird auf eine Zweierpotenz aufgerundet)
+	 */
+	WarenkorbAblauf(ShopVerwaltung shop, long ablaufzeit, long schrittDauer, int faecher) {
+		this.shop = shop;
+		this.ablaufzeit = ablaufzeit;
+		this.schrittDauer = schrittDauer;
+		int anzahl = 1;
+		while (anzahl < faecher)
+			anzahl <<= 1;
+		this.faecher = new Eintrag[anzahl];
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Plant das Leeren des Warenkorbs eines Kunden nach Ablauf der
+	 * Ablaufzeit. Ist bereits ein Zeitpunkt geplant, wird er verschoben.
+	 *
+	 * @param kunde
+	 */
+	void planen(Kunde kunde) {
+		synchronized (sperre) {
+			Eintrag e = eintraege.get(kunde);
+			if (e == null) {
+				e = new Eintrag(kunde);
+				eintraege.put(kunde, e);
+			} else {
+				aushaengen(e);
+			}
+			// aufrunden, damit der Warenkorb nie zu frueh geleert wird
+			e.ablaufSchritt = jetztSchritt() + (ablaufzeit + schrittDauer - 1) / schrittDauer;
+			einhaengen(e);
+
+			if (thread == null) {
+				// Der Thread wird erst gestartet, wenn ein Warenkorb ueberwacht werden muss
+				thread = new Thread(this, "WarenkorbAblauf");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Bricht das geplante Leeren des Warenkorbs eines Kunden ab.
+	 *
+	 * @param kunde
+	 */
+	void abbrechen(Kunde kunde) {
+		synchronized (sperre) {
+			Eintrag e = eintraege.remove(kunde);
+			if (e != null)
+				aushaengen(e);
+		}
+	}
+
+	/**
+	 * Rueckt das Rad im Takt der Schrittdauer weiter und leert die
+	 * abgelaufenen Warenkoerbe.
+	 */
+	public void run() {
+		try {
+			while (true) {
+				long warten;
+				synchronized (sperre) {
+					warten = (aktuellerSchritt + 1) * schrittDauer - (System.nanoTime() - start) / 1000000;
+				}
+				if (warten > 0) {
+					try {
+						Thread.sleep(warten);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				try {
+					leeren(weiterruecken());
+				} catch (RuntimeException e) {
+					// Der Thread ist der einzige, der Warenkoerbe leert
+					System.err.println("Fehler beim Weiterruecken des Warenkorb-Ablaufs: " + e);
+				}
+			}
+		} finally {
+			// Endet der Thread trotzdem, startet ihn das naechste planen() neu
+			synchronized (sperre) {
+				thread = null;
+			}
+		}
+	}
+
+	/**
+	 * Rueckt das Rad bis zum aktuellen Schritt weiter und nimmt alle
+	 * abgelaufenen Eintraege heraus.
+	 *
+	 * @return Kunden, deren Warenkorb abgelaufen ist
+	 */
+	private List<Kunde> weiterruecken() {
+		List<Kunde> abgelaufen = new ArrayList<Kunde>();
+		synchronized (sperre) {
+			long bis = jetztSchritt();
+			while (aktuellerSchritt < bis) {
+				aktuellerSchritt++;
+				Eintrag e = faecher[(int) (aktuellerSchritt & (faecher.length - 1))];
+				while (e != null) {
+					Eintrag naechster = e.naechster;
+					// Eintraege, die erst in einer spaeteren Runde ablaufen, bleiben im Fach
+					if (e.ablaufSchritt <= aktuellerSchritt) {
+						aushaengen(e);
+						eintraege.remove(e.kunde);
+						abgelaufen.add(e.kunde);
+					}
+					e = naechster;
+				}
+			}
+		}
+		return abgelaufen;
+	}
+
+	/**
+	 * Leert die abgelaufenen Warenkoerbe. Jede Anfrage eines Kunden plant den
+	 * Ablauf neu, bevor sie den Warenkorb veraendert. Geprueft und geleert wird
+	 * deshalb unter der Sperre des Kunden, die auch jede Aenderung am Warenkorb
+	 * haelt: ein Warenkorb, der nach dem Ablauf wieder benutzt wurde, ist dann
+	 * erneut geplant und wird nicht geleert.
+	 *
+	 * @param abgelaufen
+	 */
+	private void leeren(List<Kunde> abgelaufen) {
+		for (Kunde kunde : abgelaufen) {
+			try {
+				synchronized (kunde) {
+					synchronized (sperre) {
+						// inzwischen wieder aktiv geworden
+						if (eintraege.containsKey(kunde))
+							continue;
+					}
+					shop.leeren(kunde);
+				}
+				geleerteWarenkoerbe.incrementAndGet();
+			} catch (ArtikelBestandIstKeineVielfacheDerPackungsgroesseException e) {
+				System.err.println("Fehler beim Timeout Leeren des Warenkorbes!");
+				System.err.println(e.getMessage());
+			} catch (RuntimeException e) {
+				// nur dieser Warenkorb ist betroffen, die anderen werden weiter geleert
+				System.err.println("Fehler beim Timeout Leeren des Warenkorbes!");
+				System.err.println(e);
+			}
+		}
+	}
+
+	/**
+	 * Gibt die Kennzahlen des Zeitrads zurueck.
+	 *
+	 * @return Kennzahlen nach Namen
+	 */
+	Map<String, Number> gibKennzahlen() {
+		Map<String, Number> kennzahlen = new LinkedHashMap<String, Number>();
+		synchronized (sperre) {
+			kennzahlen.put("ueberwachteWarenkoerbe", eintraege.size());
+		}
+		kennzahlen.put("abgelaufeneWarenkoerbe", geleerteWarenkoerbe.get());
+		return kennzahlen;
+	}
+
+	private long jetztSchritt() {
+		return (System.nanoTime() - start) / 1000000 / schrittDauer;
+	}
+
+	private void einhaengen(Eintrag e) {
+		int fach = (int) (e.ablaufSchritt & (faecher.length - 1));
+		e.vorheriger = null;
+		e.naechster = faecher[fach];
+		if (e.naechster != null)
+			e.naechster.vorheriger = e;
+		faecher[fach] = e;
+	}
+
+	private void aushaengen(Eintrag e) {
+		if (e.vorheriger != null)
+			e.vorheriger.naechster = e.naechster;
+		else
+			faecher[(int) (e.ablaufSchritt & (faecher.length - 1))] = e.naechster;
+		if (e.naechster != null)
+			e.naechster.vorheriger = e.vorheriger;
+		e.vorheriger = null;
+		e.naechster = null;
+	}
+
+}
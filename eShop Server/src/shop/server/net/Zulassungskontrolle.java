@@ -0,0 +1,119 @@
+package shop.server.net;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Klasse zur Begrenzung der Last auf dem Server.
+ *
+ * Die Zulassungskontrolle begrenzt die Anzahl gleichzeitiger Verbindungen und
+ * stellt einen Thread-Pool mit beschraenkter Warteschlange zur Verfuegung. Ohne
+ * Warteschlange wird ein Auftrag nur angenommen, wenn ein Thread frei ist; so
+ * wartet kein Auftrag, der einen Thread dauerhaft belegen wuerde. Kann
+ * eine Verbindung oder ein Auftrag nicht angenommen werden, bekommt der Client
+ * die Antwort SERVER_BUSY. Die Kennzahlen (Auslastung, Warteschlangenlaenge,
+ * Abweisungen) koennen ueber gibKennzahlen() abgefragt werden.
+ */
+class Zulassungskontrolle {
+
+	// Antwort an den Client, wenn der Server ueberlastet ist
+	static final String SERVER_BUSY = "ServerBusy";
+
+	private int maxVerbindungen;
+	private ThreadPoolExecutor pool;
+
+	private AtomicInteger aktiveVerbindungen = new AtomicInteger(0);
+	private AtomicLong abgewieseneVerbindungen = new AtomicLong(0);
+	private AtomicLong abgewieseneAuftraege = new AtomicLong(0);
+
+	/**
+	 * Konstruktor der Zulassungskontrolle.
+	 *
+	 * @param maxVerbindungen maximale Anzahl gleichzeitiger Verbindungen
+	 * @param threads maximale Anzahl Threads im Pool
+	 * @param warteschlange maximale Anzahl wartender Auftraege (0 = keine Warteschlange)
+	 */
+	Zulassungskontrolle(int maxVerbindungen, int threads, int warteschlange) {
+		this.maxVerbindungen = maxVerbindungen;
+		BlockingQueue<Runnable> queue = warteschlange > 0
+				? new ArrayBlockingQueue<Runnable>(warteschlange)
+				: new SynchronousQueue<Runnable>();
+		pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				queue, new ThreadPoolExecutor.AbortPolicy());
+		// Unbenutzte Threads werden nach einer Minute wieder beendet
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Prueft, ob eine weitere Verbindung angenommen werden darf, und zaehlt sie
+	 * gegebenenfalls als aktiv.
+	 *
+	 * @return true, wenn die Verbindung angenommen wurde
+	 */
+	boolean verbindungZulassen() {
+		int aktiv;
+		do {
+			aktiv = aktiveVerbindungen.get();
+			if (aktiv >= maxVerbindungen) {
+				abgewieseneVerbindungen.incrementAndGet();
+				return false;
+			}
+		} while (!aktiveVerbindungen.compareAndSet(aktiv, aktiv + 1));
+		return true;
+	}
+
+	/**
+	 * Muss fuer jede zugelassene Verbindung genau einmal aufgerufen werden,
+	 * wenn sie beendet wird.
+	 */
+	void verbindungBeendet() {
+		aktiveVerbindungen.decrementAndGet();
+	}
+
+	/**
+	 * Uebergibt einen Auftrag an den Thread-Pool.
+	 *
+	 * @param auftrag
+	 * @return false, wenn der Auftrag wegen voller Warteschlange (bzw. ohne
+	 *         Warteschlange mangels freiem Thread) abgewiesen wurde
+	 */
+	boolean ausfuehren(Runnable auftrag) {
+		try {
+			pool.execute(auftrag);
+			return true;
+		} catch (RejectedExecutionException e) {
+			abgewieseneAuftraege.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Gibt die aktuellen Kennzahlen der Zulassungskontrolle zurueck, z.B. um
+	 * die Groesze des Pools anzupassen.
+	 *
+	 * @return Kennzahlen nach Namen
+	 */
+	Map<String, Number> gibKennzahlen() {
+		Map<String, Number> kennzahlen = new LinkedHashMap<String, Number>();
+		kennzahlen.put("aktiveVerbindungen", aktiveVerbindungen.get());
+		kennzahlen.put("maxVerbindungen", maxVerbindungen);
+		kennzahlen.put("abgewieseneVerbindungen", abgewieseneVerbindungen.get());
+		kennzahlen.put("abgewieseneAuftraege", abgewieseneAuftraege.get());
+		kennzahlen.put("warteschlange", pool.getQueue().size());
+		kennzahlen.put("warteschlangeFrei", pool.getQueue().remainingCapacity());
+		kennzahlen.put("aktiveThreads", pool.getActiveCount());
+		kennzahlen.put("poolGroesse", pool.getPoolSize());
+		kennzahlen.put("maxPoolGroesse", pool.getMaximumPoolSize());
+		kennzahlen.put("erledigteAuftraege", pool.getCompletedTaskCount());
+		return kennzahlen;
+	}
+
+}
@@ -4,12 +4,20 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import shop.common.valueobjects.Mitarbeiter;
 import shop.common.valueobjects.Person;
@@ -19,27 +27,66 @@ import shop.common.valueobjects.PersonTyp;
  * 
  * Schnittstelle zur persistenten Speicherung von
  * Ein- und AuslagerungsDaten in .log Dateien
+ * 
+ * Die Logdatei wird in Segmente je Tag aufgeteilt: zu "EinAuslagerung.log" gehoert
+ * das Verzeichnis "EinAuslagerung" mit den Dateien "yyyy-MM-dd.log". Jeder Eintrag
+ * wird in das Segment seines Datums geschrieben, beim Lesen werden die Segmente
+ * in der Reihenfolge ihrer Tage gelesen. Eine Logdatei im alten Format (eine
+ * einzige Datei) wird beim ersten Zugriff in Segmente aufgeteilt und danach geloescht.
  * @see LogPersistenceManager
  */
 public class FileLogPersistenceManager implements LogPersistenceManager {
 	
+	// Art des Eintrags, der einen entfernten Artikel markiert (siehe speichereEntfernung())
+	public static final String ENTFERNT = "entfernt";
+	
 	private BufferedReader reader = null;
 	private PrintWriter writer = null;
+	// Datei unter dem writer, um sie auf das Speichermedium zu synchronisieren
+	private FileOutputStream ausgabe = null;
 	
+	// Verzeichnis der Segmente, in die geschrieben wird, und Tag des offenen Segments
+	private File schreibVerzeichnis = null;
+	private String schreibTag = null;
+	// noch zu lesende Segmente
+	private List<File> leseSegmente = new ArrayList<File>();
+	
 	@Override
-	public void openForReading(String datei) throws FileNotFoundException {
-		reader = new BufferedReader(new FileReader(datei));
+	public void openForReading(String datei) throws IOException {
+		openForReading(datei, null);
+	}
+	
+	@Override
+	public void openForReading(String datei, Date ab) throws IOException {
+		String abTag = ab == null ? null : new SimpleDateFormat("yyyy-MM-dd").format(ab);
+		leseSegmente = new ArrayList<File>();
+		// Segmente vor dem Tag "ab" werden gar nicht erst geoeffnet
+		for (Map.Entry<String, File> segment : gibSegmente(datei).entrySet()) {
+			if (abTag == null || segment.getKey().compareTo(abTag) >= 0)
+				leseSegmente.add(segment.getValue());
+		}
+		reader = null;
+		naechstesSegmentOeffnen();
 	}
 	
 	@Override
 	public void openForWriting(String datei) throws IOException {
-		writer = new PrintWriter(new BufferedWriter(new FileWriter(datei, true)));
+		schreibVerzeichnis = gibVerzeichnis(datei);
+		migrieren(datei);
+		sicherungenAufraeumen(datei);
+		if (!schreibVerzeichnis.isDirectory() && !schreibVerzeichnis.mkdirs())
+			throw new IOException("Verzeichnis der Logdatei kann nicht angelegt werden: " + schreibVerzeichnis);
+		schreibTag = null;
 	}
 	
 	@Override
 	public boolean close() {
 		if (writer != null)
 			writer.close();
+		writer = null;
+		ausgabe = null;
+		schreibTag = null;
+		leseSegmente = new ArrayList<File>();
 		if (reader != null) {
 			try {
 				reader.close();
@@ -51,6 +98,18 @@ public class FileLogPersistenceManager implements LogPersistenceManager {
 		return true;
 	}
 	
+	@Override
+	public void schreibeAus(boolean synchronisieren) throws IOException {
+		if (writer == null)
+			return;
+		writer.flush();
+		// PrintWriter wirft bei Schreibfehlern keine Ausnahme, sie muessen abgefragt werden
+		if (writer.checkError())
+			throw new IOException("Fehler beim Schreiben der Logdatei");
+		if (synchronisieren && ausgabe != null)
+			ausgabe.getFD().sync();
+	}
+	
 	@Override
 	public String ladeEinAuslagerung() throws IOException {
 		String zeile = liesZeile();
@@ -62,6 +121,7 @@ public class FileLogPersistenceManager implements LogPersistenceManager {
 
 	@Override
 	public void speichereEinlagerung(Mitarbeiter m, int anzahl, int artikelnummer, Date datum) throws IOException {
+		segmentWaehlen(datum);
 		schreibeZeile(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(datum) + " Mitarbeiter " + m.getId() + " " + anzahl + " Stueck Artikel " + artikelnummer + " eingelagert");
 	}
 	
@@ -74,112 +134,185 @@ public class FileLogPersistenceManager implements LogPersistenceManager {
 		}else{
 			auslagerungsTyp = "verkauft";
 		}
+		segmentWaehlen(datum);
 		schreibeZeile(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(datum) + " " + personTyp+ " " + p.getId() + " " + anzahl + " Stueck Artikel " + artikelnummer + " "+auslagerungsTyp);
 	}
 	
 	/**
-	 * Diese Methode liest die aktuelle Logdatei ab der angegebenen Zeile und fuegt 
-	 * dann jede Zeile in eine temporaer erstellte Datei.
-	 * Zum Schluss wird die Logdatei geloescht und die temporaere Datei nimmt den Namen
-	 * der Logdatei ein.
-	 * Somit werden alle Eintraege vor der angegebenen Zeile geloescht.
+	 * Diese Methode loescht die Segmente aller Tage vor dem angegebenen Datum.
+	 * Es werden nur ganze Dateien geloescht, die Eintraege des Tages "datum" bleiben
+	 * vollstaendig erhalten.
 	 */
 	@Override
-	public boolean cleanLogdatei(String zeile, String dateiname) throws IOException{
-		try {
-
-			File original = new File(dateiname);
-			File tmp = new File(original.getAbsolutePath() + ".tmp");
-
-			// eigenes Bilden von Reader und Writer, da hier File Objekte uebergeben werden,
-			// die wir zum Loeschen, respkt. umbenennen der Dateien brauchen
-			reader = new BufferedReader(new FileReader(original));
-			writer = new PrintWriter(new FileWriter(tmp));
-
-			String str = null;
-
-			// Gehe von Zeile zur Zeile bis die eingelesene Zeile leer ist
-			// oder der variablen "zeile" entspricht
-			while ((str = reader.readLine()) != null && !str.equals(zeile)); 
-
-			if(str != null){
-				// Schreibe den String in die temporaere Datei
-				do{
-					writer.println(str);
-					writer.flush();
-				}while ((str = reader.readLine()) != null);
-			}
-
-			close();
-
-			//Loesche das Original
-			if (!original.delete()) {
-				System.err.println("Loeschen des originals fehlgeschlagen!");
-				return false;
+	public boolean entferneEintraegeVor(Date datum, String dateiname) throws IOException {
+		String grenze = new SimpleDateFormat("yyyy-MM-dd").format(datum);
+		boolean ok = true;
+		for (Map.Entry<String, File> segment : gibSegmente(dateiname).entrySet()) {
+			// Die Segmente sind nach Tagen sortiert
+			if (segment.getKey().compareTo(grenze) >= 0)
+				break;
+			if (!segment.getValue().delete()) {
+				System.err.println("Loeschen des Segments " + segment.getValue() + " fehlgeschlagen!");
+				ok = false;
 			}
-
-			//Gib der temporaeren Datei, den Namen des originals
-			if (!tmp.renameTo(original))
-				System.err.println("Umbenennen der temporaeren Datei fehlgeschlagen!");
-
-		} catch (FileNotFoundException e) {
-			System.err.println("Datei nicht gefunden!");
-			System.err.println(e.getMessage());
 		}
-		
-		return true;
+		return ok;
 	}
 	
-	/**
-	 * Diese Methode liest die aktuelle Logdatei und fuegt jede Zeile in eine temporaer
-	 * erstellte Datei. Jede Zeile die die angegebene ID enthaelt wird dabei ignoriert.
-	 * Somit wird ein entferntes Artikel komplett aus der Logdatei entfernt.
-	 * Dies ist notwendig, um die Bestandshistorie eines spaeter hinzugefuegten Artikels,
-	 * mit der gleichen ID, koherent zu halten.
-	 * Zum Schluss wird die Logdatei geloescht und die temporaere Datei nimmt den Namen
-	 * der Logdatei ein.
-	 */
+	/**
+	 * Diese Methode fuegt einen Grabstein (Tombstone) fuer den entfernten Artikel an. Alle
+	 * Eintraege des Artikels vor dem Grabstein gehoeren zu einer frueheren Generation der
+	 * Artikelnummer und werden nicht mehr beachtet, bis kompaktieren() sie entfernt.
+	 * Der Grabstein hat denselben Aufbau wie die anderen Eintraege, mit der Anzahl 0.
+	 */
 	@Override
-	public boolean entferneArtikelAusLog(String id, String dateiname) throws IOException {
-		try {
-
-			File original = new File(dateiname);
-			File tmp = new File(original.getAbsolutePath() + ".tmp");
+	public void speichereEntfernung(Mitarbeiter m, int artikelnummer, Date datum) throws IOException {
+		segmentWaehlen(datum);
+		schreibeZeile(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(datum) + " Mitarbeiter " + m.getId() + " 0 Stueck Artikel " + artikelnummer + " " + ENTFERNT);
+	}
+	
+	/**
+	 * Diese Methode entfernt die Eintraege frueherer Generationen aus den Segmenten.
+	 * Zuerst wird die Position des letzten Grabsteins jedes Artikels bestimmt, dann wird
+	 * jedes Segment, das Eintraege vor einem dieser Grabsteine enthaelt, ohne diese
+	 * Eintraege (und ohne den Grabstein selbst) in eine temporaere Datei geschrieben,
+	 * die anschlieszend den Namen des Segments einnimmt. Das Original wird dabei erst
+	 * geloescht, wenn die temporaere Datei an seine Stelle getreten ist.
+	 * Waehrenddessen darf nicht in die Logdatei geschrieben werden, abgelaufene Segmente
+	 * koennen aber gleichzeitig geloescht werden (siehe cleanLogdatei()) und werden
+	 * dann uebersprungen.
+	 */
+	@Override
+	public boolean kompaktieren(String dateiname) throws IOException {
+		sicherungenAufraeumen(dateiname);
+		TreeMap<String, File> segmente = gibSegmente(dateiname);
 
-			// eigenes Bilden von Reader und Writer, da hier File Objekte uebergeben werden,
-			// die wir zum Loeschen, respkt. umbenennen der Dateien brauchen
-			reader = new BufferedReader(new FileReader(original));
-			writer = new PrintWriter(new FileWriter(tmp));
+		// Position (fortlaufende Zeilennummer ueber alle Segmente) des letzten Grabsteins je Artikel
+		Map<Integer, Long> letzterGrabstein = new HashMap<Integer, Long>();
+		// Position der ersten Zeile jedes gelesenen Segments
+		Map<File, Long> anfang = new LinkedHashMap<File, Long>();
+		long position = 0;
+		for (File segment : segmente.values()) {
+			BufferedReader segmentReader;
+			try {
+				segmentReader = new BufferedReader(new FileReader(segment));
+			} catch (FileNotFoundException e) {
+				// Das Segment ist inzwischen als abgelaufen geloescht worden
+				continue;
+			}
+			anfang.put(segment, position);
+			try {
+				String str;
+				while ((str = segmentReader.readLine()) != null) {
+					String[] tokens = str.split(" ");
+					if (istGrabstein(tokens))
+						letzterGrabstein.put(gibArtikelnummer(tokens), position);
+					position++;
+				}
+			} finally {
+				segmentReader.close();
+			}
+		}
+		if (letzterGrabstein.isEmpty())
+			return true;
 
-			String str = null;
+		boolean ok = true;
+		for (Map.Entry<File, Long> segment : anfang.entrySet()) {
+			File original = segment.getKey();
+			position = segment.getValue();
+			File tmp = new File(original.getAbsolutePath() + ".tmp");
+			BufferedReader segmentReader;
+			try {
+				segmentReader = new BufferedReader(new FileReader(original));
+			} catch (FileNotFoundException e) {
+				continue;
+			}
+			PrintWriter tmpWriter;
+			try {
+				tmpWriter = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+			} catch (IOException e) {
+				segmentReader.close();
+				throw e;
+			}
+			boolean veraendert = false;
+			try {
+				String str;
+				while ((str = segmentReader.readLine()) != null) {
+					Long grabstein = letzterGrabstein.get(gibArtikelnummer(str.split(" ")));
+					if (grabstein != null && position <= grabstein) {
+						veraendert = true;
+					} else {
+						tmpWriter.println(str);
+					}
+					position++;
+				}
+			} finally {
+				segmentReader.close();
+				tmpWriter.close();
+			}
 
-			// Gehe von Zeile zur Zeile bis die eingelesene Zeile leer ist
-			// und schreibe nur die Zeilen, die nicht die ID beherbergen
-			while ((str = reader.readLine()) != null){ 
-				if(!str.contains(id)){
-					// Schreibe den String in die temporaere Datei
-					writer.println(str);
-					writer.flush();
+			// Unveraenderte Segmente bleiben, wie sie sind
+			if (!veraendert || tmpWriter.checkError()) {
+				if (tmpWriter.checkError()) {
+					System.err.println("Fehler beim Schreiben der temporaeren Datei " + tmp);
+					ok = false;
 				}
+				if (!tmp.delete())
+					System.err.println("Loeschen der temporaeren Datei fehlgeschlagen!");
+				continue;
 			}
-			close();
 
-			//Loesche das Original
-			if (!original.delete()) {
-				System.err.println("Loeschen des originals fehlgeschlagen!");
-				return false;
+			//Sichere das Original, es ist bis zum Umbenennen der temporaeren Datei noetig
+			File alt = new File(original.getAbsolutePath() + ".alt");
+			if (!original.renameTo(alt)) {
+				// Schlaegt auch fehl, wenn das Segment inzwischen geloescht wurde
+				if (original.exists()) {
+					System.err.println("Sichern des originals fehlgeschlagen!");
+					ok = false;
+				}
+				if (!tmp.delete())
+					System.err.println("Loeschen der temporaeren Datei fehlgeschlagen!");
+				continue;
 			}
 
 			//Gib der temporaeren Datei, den Namen des originals
-			if (!tmp.renameTo(original))
+			if (!tmp.renameTo(original)) {
 				System.err.println("Umbenennen der temporaeren Datei fehlgeschlagen!");
+				ok = false;
+				if (!alt.renameTo(original))
+					System.err.println("Wiederherstellen des originals " + original + " aus " + alt + " fehlgeschlagen!");
+				if (!tmp.delete())
+					System.err.println("Loeschen der temporaeren Datei fehlgeschlagen!");
+				continue;
+			}
 
-		} catch (FileNotFoundException e) {
-			System.err.println("Datei nicht gefunden!");
-			System.err.println(e.getMessage());
+			//Loesche das gesicherte Original
+			if (!alt.delete())
+				System.err.println("Loeschen des gesicherten originals " + alt + " fehlgeschlagen!");
 		}
-		
-		return true;
+		return ok;
+	}
+	
+	/**
+	 * @param tokens die an Leerzeichen aufgeteilte Zeile
+	 * @return Artikelnummer des Eintrags, oder -1 wenn die Zeile keine enthaelt
+	 */
+	public static int gibArtikelnummer(String[] tokens) {
+		if (tokens.length < 9 || !tokens[6].equals("Artikel"))
+			return -1;
+		try {
+			return Integer.parseInt(tokens[7]);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * @param tokens die an Leerzeichen aufgeteilte Zeile
+	 * @return true, wenn die Zeile der Grabstein eines entfernten Artikels ist
+	 */
+	public static boolean istGrabstein(String[] tokens) {
+		return tokens.length >= 9 && tokens[8].equals(ENTFERNT);
 	}
 	
 	
@@ -187,10 +320,17 @@ public class FileLogPersistenceManager implements LogPersistenceManager {
 	 * Hilfsmethoden zum lesen bzw. schreiben einer Zeile
 	 */
 	private String liesZeile() throws IOException {
-		if (reader != null)
-			return reader.readLine();
-		else
+		if (reader == null)
 			return "";
+		String zeile;
+		// Am Ende eines Segments geht es mit dem naechsten weiter
+		while ((zeile = reader.readLine()) == null) {
+			reader.close();
+			reader = null;
+			if (!naechstesSegmentOeffnen())
+				return null;
+		}
+		return zeile;
 	}
 
 	public void schreibeZeile(String daten) {
@@ -198,5 +338,133 @@ public class FileLogPersistenceManager implements LogPersistenceManager {
 			writer.println(daten);
 	}
 	
+	/*
+	 * Hilfsmethoden fuer die Segmente
+	 */
+	
+	private boolean naechstesSegmentOeffnen() throws FileNotFoundException {
+		while (!leseSegmente.isEmpty()) {
+			File segment = leseSegmente.remove(0);
+			// Das Segment kann inzwischen als abgelaufen geloescht worden sein
+			if (segment.exists()) {
+				reader = new BufferedReader(new FileReader(segment));
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Oeffnet das Segment des angegebenen Tages zum Anhaengen, wenn es nicht schon offen ist.
+	 */
+	private void segmentWaehlen(Date datum) throws IOException {
+		if (schreibVerzeichnis == null)
+			return;
+		String tag = new SimpleDateFormat("yyyy-MM-dd").format(datum);
+		if (tag.equals(schreibTag))
+			return;
+		if (writer != null) {
+			// Das bisherige Segment wird vollstaendig gesichert, bevor es geschlossen wird
+			schreibeAus(true);
+			writer.close();
+		}
+		ausgabe = new FileOutputStream(new File(schreibVerzeichnis, tag + ".log"), true);
+		writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(ausgabe)));
+		schreibTag = tag;
+	}
+	
+	/**
+	 * @return Verzeichnis der Segmente zur Logdatei, z.B. "EinAuslagerung" zu "EinAuslagerung.log"
+	 */
+	private static File gibVerzeichnis(String dateiname) {
+		int punkt = dateiname.lastIndexOf('.');
+		if (punkt > dateiname.lastIndexOf(File.separatorChar) && punkt > dateiname.lastIndexOf('/'))
+			return new File(dateiname.substring(0, punkt));
+		return new File(dateiname + ".segmente");
+	}
+	
+	/**
+	 * Gibt den Index der Segmente zurueck: die vorhandenen Segmentdateien, sortiert nach ihrem Tag.
+	 * Eine Logdatei im alten Format wird vorher in Segmente aufgeteilt.
+	 */
+	private static TreeMap<String, File> gibSegmente(String dateiname) throws IOException {
+		migrieren(dateiname);
+		TreeMap<String, File> segmente = new TreeMap<String, File>();
+		File[] dateien = gibVerzeichnis(dateiname).listFiles();
+		if (dateien != null) {
+			for (File datei : dateien) {
+				String name = datei.getName();
+				if (datei.isFile() && name.matches("\\d{4}-\\d{2}-\\d{2}\\.log"))
+					segmente.put(name.substring(0, 10), datei);
+			}
+		}
+		return segmente;
+	}
+	
+	/**
+	 * Raeumt die beim Kompaktieren gesicherten Segmente auf, die nach einem Abbruch
+	 * zurueckgeblieben sind: fehlt das Segment selbst, wird es aus der Sicherung
+	 * wiederhergestellt, sonst ist die Sicherung ueberfluessig.
+	 * Darf nur aufgerufen werden, waehrend nicht kompaktiert wird.
+	 */
+	private static void sicherungenAufraeumen(String dateiname) {
+		File[] dateien = gibVerzeichnis(dateiname).listFiles();
+		if (dateien == null)
+			return;
+		for (File alt : dateien) {
+			String name = alt.getName();
+			if (!alt.isFile() || !name.matches("\\d{4}-\\d{2}-\\d{2}\\.log\\.alt"))
+				continue;
+			File original = new File(alt.getParentFile(), name.substring(0, name.length() - ".alt".length()));
+			if (original.exists()) {
+				if (!alt.delete())
+					System.err.println("Loeschen des gesicherten Segments " + alt + " fehlgeschlagen!");
+			} else if (!alt.renameTo(original)) {
+				System.err.println("Wiederherstellen des Segments " + original + " fehlgeschlagen!");
+			}
+		}
+	}
+	
+	/**
+	 * Teilt eine Logdatei im alten Format (alle Eintraege in einer Datei) in Segmente
+	 * je Tag auf und loescht sie danach. Zeilen ohne gueltiges Datum kommen in das
+	 * Segment der Zeile davor.
+	 */
+	private static synchronized void migrieren(String dateiname) throws IOException {
+		File alt = new File(dateiname);
+		if (!alt.isFile())
+			return;
+		File verzeichnis = gibVerzeichnis(dateiname);
+		if (!verzeichnis.isDirectory() && !verzeichnis.mkdirs())
+			throw new IOException("Verzeichnis der Logdatei kann nicht angelegt werden: " + verzeichnis);
+
+		BufferedReader altReader = new BufferedReader(new FileReader(alt));
+		PrintWriter segmentWriter = null;
+		String tag = null;
+		try {
+			String zeile;
+			while ((zeile = altReader.readLine()) != null) {
+				if (zeile.length() >= 10 && zeile.substring(0, 10).matches("\\d{4}-\\d{2}-\\d{2}")
+						&& !zeile.substring(0, 10).equals(tag)) {
+					if (segmentWriter != null)
+						segmentWriter.close();
+					tag = zeile.substring(0, 10);
+					segmentWriter = new PrintWriter(new BufferedWriter(new FileWriter(new File(verzeichnis, tag + ".log"), true)));
+				}
+				if (segmentWriter != null)
+					segmentWriter.println(zeile);
+			}
+		} finally {
+			altReader.close();
+			if (segmentWriter != null) {
+				segmentWriter.close();
+				if (segmentWriter.checkError())
+					throw new IOException("Fehler beim Aufteilen der Logdatei " + alt);
+			}
+		}
+
+		if (!alt.delete())
+			System.err.println("Loeschen der alten Logdatei fehlgeschlagen!");
+	}
 	
 }
@@ -27,10 +27,27 @@ public interface LogPersistenceManager {
 	 */
 	public void openForReading(String datenquelle) throws IOException;
 	
+	/**
+	 * Oeffnet die Datenquelle zum Lesen der Eintraege ab dem angegebenen Tag. Eintraege
+	 * frueherer Tage koennen, muessen aber nicht uebersprungen werden.
+	 * 
+	 * @param datenquelle
+	 * @param ab Tag, ab dem gelesen wird, oder null fuer alle Eintraege
+	 * @throws IOException
+	 */
+	public void openForReading(String datenquelle, Date ab) throws IOException;
+	
 	public void openForWriting(String datenquelle) throws IOException;
 	
 	public boolean close();
 	
+	/**
+	 * Diese Methode schreibt die gepufferten Zeilen in die zum Schreiben geoeffnete Datei.
+	 * @param synchronisieren true, wenn die Zeilen auch auf dem Speichermedium angekommen sein muessen (fsync)
+	 * @throws IOException wenn beim Schreiben ein Fehler auftrat
+	 */
+	public void schreibeAus(boolean synchronisieren) throws IOException;
+	
 	
 	public String ladeEinAuslagerung() throws IOException;
 
@@ -39,21 +56,31 @@ public interface LogPersistenceManager {
 	public void speichereAuslagerung(Person p, int anzahl, int artikelnummer, Date datum) throws IOException;
 	
 	/**
-	 * Diese Methode loescht alles in der angegebenen Datei was sich vor der angegebenen Zeile befindet.
-	 * @param zeile Die Zeile ab welcher alles behalten wird. Die Zeile selbst wird auch behalten.
+	 * Diese Methode loescht die Eintraege der Tage vor dem angegebenen Datum.
+	 * @param datum Tag, ab dem alles behalten wird. Die Eintraege dieses Tages werden auch behalten.
 	 * @param dateiname Der Name der Datei.
 	 * @return true, wenn kein Fehler auftrat
 	 * @throws IOException
 	 */
-	public boolean cleanLogdatei(String zeile, String dateiname) throws IOException;
+	public boolean entferneEintraegeVor(Date datum, String dateiname) throws IOException;
+	
+	/**
+	 * Diese Methode markiert einen Artikel als entfernt. Die frueheren Eintraege der
+	 * Artikelnummer werden danach nicht mehr beachtet, auch wenn sie spaeter wieder
+	 * vergeben wird.
+	 * @param m Mitarbeiter, der den Artikel entfernt hat
+	 * @param artikelnummer
+	 * @param datum
+	 * @throws IOException
+	 */
+	public void speichereEntfernung(Mitarbeiter m, int artikelnummer, Date datum) throws IOException;
 	
 	/**
-	 * Diese Methode entfernt alle Eintraege, die die angegebene id enthalten.
-	 * @param id Die id, dessen Eintraege zu entfernen sind
+	 * Diese Methode entfernt die Eintraege entfernter Artikel, die nicht mehr beachtet werden.
 	 * @param dateiname Der Name der Datei
 	 * @return true, wenn kein Fehler auftrat
 	 * @throws IOException
 	 */
-	public boolean entferneArtikelAusLog(String id, String dateiname) throws IOException;
+	public boolean kompaktieren(String dateiname) throws IOException;
 	
 }
@@ -0,0 +1,50 @@
+package shop.server;
+
+/**
+ * Gemeinsame Auswertung der Tests, die ohne Test-Framework ueber main()
+ * gestartet werden.
+ *
+ * Jede Bedingung wird mit "ok" oder "FEHLER" ausgegeben. beenden() meldet das
+ * Ergebnis und beendet die JVM mit dem Status 1, wenn eine Bedingung nicht
+ * erfuellt war.
+ */
+public class Pruefung {
+
+	private String name;
+	private boolean erfolgreich = true;
+
+	/**
+	 * @param name Name des Tests fuer die Ergebnismeldung
+	 */
+	public Pruefung(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gibt eine Bedingung mit ihrem Ergebnis aus und merkt sich, ob sie
+	 * erfuellt war.
+	 *
+	 * @param erfuellt Ergebnis der Bedingung
+	 * @param text Beschreibung der Bedingung
+	 * @return erfuellt
+	 */
+	public boolean bedingung(boolean erfuellt, String text) {
+		System.out.println((erfuellt ? "  ok:     " : "  FEHLER: ") + text);
+		if (!erfuellt)
+			erfolgreich = false;
+		return erfuellt;
+	}
+
+	/**
+	 * Gibt das Ergebnis des Tests aus. War eine Bedingung nicht erfuellt, wird
+	 * die JVM mit dem Status 1 beendet.
+	 */
+	public void beenden() {
+		if (!erfolgreich) {
+			System.err.println(name + " fehlgeschlagen");
+			System.exit(1);
+		}
+		System.out.println(name + " erfolgreich");
+	}
+
+}
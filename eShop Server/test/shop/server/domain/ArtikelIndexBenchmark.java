@@ -0,0 +1,95 @@
+package shop.server.domain;
+
+import java.util.List;
+import java.util.Vector;
+
+import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
+import shop.common.exceptions.ArtikelExistiertBereitsException;
+import shop.common.exceptions.ArtikelExistiertNichtException;
+import shop.common.valueobjects.Artikel;
+
+/**
+ * Benchmark fuer den Index der ArtikelVerwaltung nach Artikelnummer ohne
+ * Test-Framework (Start ueber main()). Der Benchmark gibt nur Messwerte aus
+ * und schlaegt nie fehl.
+ *
+ * Gemessen wird die mittlere Dauer von getArtikel und bestandVeraendern bei
+ * 100.000 und 1.000.000 Artikeln, zum Vergleich auch die lineare Suche in
+ * einem Vector, wie sie vor dem Index stattfand. Jede Messung wird mehrmals
+ * wiederholt, ausgegeben wird die schnellste Runde.
+ *
+ * Fuer 1.000.000 Artikel wird ein Heap von etwa 2 GB benoetigt (-Xmx2g).
+ *
+ * Aufruf: java shop.server.domain.ArtikelIndexBenchmark [Anzahl ...]
+ */
+public class ArtikelIndexBenchmark {
+
+	private static final int[] ANZAHLEN = { 100000, 1000000 };
+	private static final int RUNDEN = 5;
+	private static final int ZUGRIFFE = 1000000;
+	// Zugriffe fuer die lineare Suche, die um Groessenordnungen langsamer ist
+	private static final int ZUGRIFFE_LINEAR = 200;
+
+	public static void main(String[] args) throws Exception {
+		int[] anzahlen = ANZAHLEN;
+		if (args.length > 0) {
+			anzahlen = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				anzahlen[i] = Integer.parseInt(args[i]);
+		}
+		System.out.println(String.format("%10s %15s %20s %15s", "Artikel", "getArtikel", "bestandVeraendern", "lineare Suche"));
+		for (int anzahl : anzahlen)
+			messen(anzahl);
+	}
+
+	private static void messen(int anzahl) throws ArtikelExistiertBereitsException, ArtikelExistiertNichtException, ArtikelBestandIstKeineVielfacheDerPackungsgroesseException {
+		ArtikelVerwaltung artikel = new ArtikelVerwaltung();
+		List<Artikel> liste = new Vector<Artikel>();
+		for (int nr = 0; nr < anzahl; nr++) {
+			Artikel a = new Artikel(nr, "Artikel " + nr, 1.0, 1000);
+			artikel.einfuegen(a);
+			liste.add(a);
+		}
+
+		double suchen = Double.MAX_VALUE;
+		double veraendern = Double.MAX_VALUE;
+		double linear = Double.MAX_VALUE;
+		long summe = 0;
+		for (int runde = 0; runde < RUNDEN; runde++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ZUGRIFFE; i++)
+				summe += artikel.getArtikel(nummer(i, anzahl)).getArtikelnummer();
+			suchen = Math.min(suchen, (double) (System.nanoTime() - start) / ZUGRIFFE);
+
+			start = System.nanoTime();
+			for (int i = 0; i < ZUGRIFFE; i++)
+				artikel.bestandVeraendern(nummer(i, anzahl), i % 2 == 0 ? 1 : -1);
+			veraendern = Math.min(veraendern, (double) (System.nanoTime() - start) / ZUGRIFFE);
+
+			start = System.nanoTime();
+			for (int i = 0; i < ZUGRIFFE_LINEAR; i++)
+				summe += linearSuchen(liste, nummer(i, anzahl)).getArtikelnummer();
+			linear = Math.min(linear, (double) (System.nanoTime() - start) / ZUGRIFFE_LINEAR);
+		}
+		// verhindert, dass der JIT-Compiler die Suchen wegoptimiert
+		if (summe == 42)
+			System.out.println();
+		System.out.println(String.format("%10d %12.1f ns %17.1f ns %12.1f ns", anzahl, suchen, veraendern, linear));
+	}
+
+	/**
+	 * @return pseudozufaellige, aber reproduzierbare Artikelnummer
+	 */
+	private static int nummer(int i, int anzahl) {
+		return (int) ((i * 2654435761L) % anzahl);
+	}
+
+	private static Artikel linearSuchen(List<Artikel> liste, int artikelnummer) {
+		for (Artikel a : liste) {
+			if (a.getArtikelnummer() == artikelnummer)
+				return a;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,122 @@
+package shop.server.domain;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
+import shop.common.exceptions.ArtikelBestandIstZuKleinException;
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Massengutartikel;
+import shop.server.Pruefung;
+
+/**
+ * Belastungstest fuer den Lagerbestand ohne Test-Framework (Start ueber main()).
+ *
+ * Viele Threads reservieren und geben gleichzeitig Stueckzahlen desselben
+ * Artikels frei. Geprueft wird, dass weder der Zaehler noch der Bestand des
+ * Artikels je negativ wird, dass nie mehr reserviert wird als vorhanden ist
+ * und dass Zaehler und Bestand des Artikels am Ende uebereinstimmen.
+ */
+public class LagerbestandTest {
+
+	private static final int THREADS = 16;
+	private static final int DURCHLAEUFE = 100000;
+	// Jeder Thread haelt hoechstens so viele Stueck; zusammen mehr als der
+	// Anfangsbestand, damit um die letzten Stueck konkurriert wird
+	private static final int MAX_GEHALTEN = 150;
+
+	private static Pruefung pruefung = new Pruefung("LagerbestandTest");
+
+	public static void main(String[] args) throws Exception {
+		pruefen(new Artikel(1, "Artikel", 1.0, 1000), 1, true);
+		pruefen(new Massengutartikel(2, "Massengutartikel", 1.0, 5, 1000), 5, true);
+		// Nur reservieren: es darf genau der Anfangsbestand verkauft werden
+		pruefen(new Artikel(3, "Artikel", 1.0, 1000), 1, false);
+		pruefung.beenden();
+	}
+
+	/**
+	 * @param artikel Artikel mit seinem Anfangsbestand
+	 * @param einheit kleinste zulaessige Stueckzahl (Packungsgroesse)
+	 * @param freigeben true, wenn die Threads ihre Reservierungen ab MAX_GEHALTEN oder nach
+	 *                  einer Abweisung wieder freigeben
+	 */
+	private static void pruefen(final Artikel artikel, final int einheit, final boolean freigeben) throws Exception {
+		final Lagerbestand lager = new Lagerbestand();
+		lager.aufnehmen(artikel);
+		final int nr = artikel.getArtikelnummer();
+		final int anfangsbestand = artikel.getBestand();
+
+		final AtomicLong reserviert = new AtomicLong(0);
+		final AtomicLong abgewiesen = new AtomicLong(0);
+		final AtomicBoolean negativ = new AtomicBoolean(false);
+		final AtomicBoolean fertig = new AtomicBoolean(false);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch ende = new CountDownLatch(THREADS);
+
+		// Beobachter, der den Bestand waehrend des Tests staendig prueft
+		Thread beobachter = new Thread() {
+			public void run() {
+				while (!fertig.get()) {
+					if (lager.gibBestand(nr) < 0 || artikel.getBestand() < 0)
+						negativ.set(true);
+				}
+			}
+		};
+		beobachter.start();
+
+		for (int t = 0; t < THREADS; t++) {
+			final long saat = t;
+			new Thread() {
+				public void run() {
+					Random zufall = new Random(saat);
+					long gehalten = 0;
+					try {
+						start.await();
+						for (int i = 0; i < DURCHLAEUFE; i++) {
+							int anzahl = einheit * (1 + zufall.nextInt(4));
+							if (freigeben && gehalten + anzahl > MAX_GEHALTEN) {
+								lager.freigeben(artikel, (int) gehalten);
+								gehalten = 0;
+							}
+							try {
+								lager.reservieren(artikel, anzahl);
+								gehalten += anzahl;
+							} catch (ArtikelBestandIstZuKleinException e) {
+								abgewiesen.incrementAndGet();
+								// wie ein aufgegebener Warenkorb: alles wieder freigeben
+								if (freigeben) {
+									lager.freigeben(artikel, (int) gehalten);
+									gehalten = 0;
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						return;
+					} catch (ArtikelBestandIstKeineVielfacheDerPackungsgroesseException e) {
+						System.err.println("Unerwartete Ausnahme: " + e);
+					} finally {
+						reserviert.addAndGet(gehalten);
+						ende.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		ende.await();
+		fertig.set(true);
+		beobachter.join();
+
+		int zaehler = lager.gibBestand(nr);
+		pruefung.bedingung(!negativ.get(), "Bestand war nie negativ");
+		pruefung.bedingung(reserviert.get() <= anfangsbestand, "nicht mehr reserviert als vorhanden (" + reserviert.get() + " von " + anfangsbestand + ")");
+		pruefung.bedingung(zaehler == anfangsbestand - reserviert.get(), "Zaehler = Anfangsbestand - Reservierungen (" + zaehler + ")");
+		pruefung.bedingung(zaehler == artikel.getBestand(), "Zaehler = Bestand des Artikels (" + artikel.getBestand() + ")");
+		if (!freigeben)
+			pruefung.bedingung(zaehler == 0, "ganzer Bestand verkauft");
+		System.out.println("  " + artikel.getBezeichnung() + " " + nr + ": " + abgewiesen.get() + " Reservierungen abgewiesen");
+	}
+
+}
@@ -0,0 +1,84 @@
+package shop.server.domain;
+
+import shop.common.valueobjects.Kunde;
+import shop.common.valueobjects.Mitarbeiter;
+import shop.common.valueobjects.MitarbeiterFunktion;
+
+/**
+ * Benchmark fuer die Suche von Kunden und Mitarbeitern nach ID ohne
+ * Test-Framework (Start ueber main()). Der Benchmark gibt nur Messwerte aus
+ * und schlaegt nie fehl.
+ *
+ * Gemessen wird die mittlere Dauer von sucheKunde und sucheMitarbeiter bei
+ * 1.000 bis 1.000.000 Personen. Jede Messung wird mehrmals wiederholt,
+ * ausgegeben wird die schnellste Runde.
+ *
+ * Aufruf: java shop.server.domain.PersonenIndexBenchmark [Anzahl ...]
+ */
+public class PersonenIndexBenchmark {
+
+	private static final int[] ANZAHLEN = { 1000, 10000, 100000, 1000000 };
+	private static final int RUNDEN = 5;
+	private static final int SUCHEN = 2000000;
+
+	public static void main(String[] args) throws Exception {
+		int[] anzahlen = ANZAHLEN;
+		if (args.length > 0) {
+			anzahlen = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				anzahlen[i] = Integer.parseInt(args[i]);
+		}
+		System.out.println(String.format("%10s %15s %18s", "Personen", "sucheKunde", "sucheMitarbeiter"));
+		for (int anzahl : anzahlen)
+			System.out.println(String.format("%10d %12.1f ns %15.1f ns", anzahl, kunden(anzahl), mitarbeiter(anzahl)));
+	}
+
+	/**
+	 * @return mittlere Dauer einer Suche in Nanosekunden (schnellste Runde)
+	 */
+	private static double kunden(int anzahl) throws Exception {
+		KundenVerwaltung kunden = new KundenVerwaltung(new Lagerbestand(), new UsernameIndex());
+		for (int id = 0; id < anzahl; id++)
+			kunden.einfuegen(new Kunde(id, "kunde" + id, "pw", "Kunde " + id, "Weg " + id, 28199, "Bremen"));
+		double beste = Double.MAX_VALUE;
+		long summe = 0;
+		for (int runde = 0; runde < RUNDEN; runde++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < SUCHEN; i++)
+				summe += kunden.sucheKunde(id(i, anzahl)).getId();
+			beste = Math.min(beste, (double) (System.nanoTime() - start) / SUCHEN);
+		}
+		// verhindert, dass der JIT-Compiler die Suchen wegoptimiert
+		if (summe == 42)
+			System.out.println();
+		return beste;
+	}
+
+	/**
+	 * @return mittlere Dauer einer Suche in Nanosekunden (schnellste Runde)
+	 */
+	private static double mitarbeiter(int anzahl) throws Exception {
+		MitarbeiterVerwaltung mitarbeiter = new MitarbeiterVerwaltung(new UsernameIndex());
+		for (int id = 0; id < anzahl; id++)
+			mitarbeiter.einfuegen(new Mitarbeiter(id, "mitarbeiter" + id, "pw", "Mitarbeiter " + id, MitarbeiterFunktion.Mitarbeiter, 1000));
+		double beste = Double.MAX_VALUE;
+		long summe = 0;
+		for (int runde = 0; runde < RUNDEN; runde++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < SUCHEN; i++)
+				summe += mitarbeiter.sucheMitarbeiter(id(i, anzahl)).getId();
+			beste = Math.min(beste, (double) (System.nanoTime() - start) / SUCHEN);
+		}
+		if (summe == 42)
+			System.out.println();
+		return beste;
+	}
+
+	/**
+	 * @return pseudozufaellige, aber reproduzierbare ID
+	 */
+	private static int id(int i, int anzahl) {
+		return (int) ((i * 2654435761L) % anzahl);
+	}
+
+}
@@ -0,0 +1,144 @@
+package shop.server.domain;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shop.common.exceptions.KundeExistiertNichtException;
+import shop.common.exceptions.MitarbeiterExistiertNichtException;
+import shop.common.valueobjects.Kunde;
+import shop.common.valueobjects.Mitarbeiter;
+import shop.common.valueobjects.MitarbeiterFunktion;
+import shop.server.Pruefung;
+
+/**
+ * Test fuer die Suche von Kunden und Mitarbeitern nach ID ohne Test-Framework
+ * (Start ueber main()).
+ *
+ * Geprueft wird, dass sucheKunde und sucheMitarbeiter auch waehrend
+ * gleichzeitigem Einfuegen und Loeschen immer die richtige Person liefern und
+ * danach genau die nicht geloeschten Personen gefunden werden. Die Dauer der
+ * Suche misst PersonenIndexBenchmark.
+ */
+public class PersonenIndexTest {
+
+	private static final int PERSONEN = 100000;
+	private static final int SUCHENDE = 4;
+
+	private static Pruefung pruefung = new Pruefung("PersonenIndexTest");
+
+	public static void main(String[] args) throws Exception {
+		kundenPruefen();
+		mitarbeiterPruefen();
+		pruefung.beenden();
+	}
+
+	/**
+	 * Ein Thread fuegt Kunden ein und loescht jeden zweiten wieder, waehrend
+	 * andere Threads die Kunden suchen. Eine Suche darf nur den Kunden mit der
+	 * gesuchten ID liefern oder KundeExistiertNichtException werfen.
+	 */
+	private static void kundenPruefen() throws Exception {
+		final KundenVerwaltung kunden = new KundenVerwaltung(new Lagerbestand(), new UsernameIndex());
+		final AtomicBoolean fertig = new AtomicBoolean(false);
+		final AtomicLong falsch = new AtomicLong(0);
+		final AtomicLong gefunden = new AtomicLong(0);
+		final CountDownLatch ende = new CountDownLatch(SUCHENDE);
+
+		for (int t = 0; t < SUCHENDE; t++) {
+			new Thread() {
+				public void run() {
+					int id = 0;
+					while (!fertig.get()) {
+						id = (id + 7) % PERSONEN;
+						try {
+							if (kunden.sucheKunde(id).getId() != id)
+								falsch.incrementAndGet();
+							gefunden.incrementAndGet();
+						} catch (KundeExistiertNichtException e) {
+							// noch nicht eingefuegt oder schon geloescht
+						}
+					}
+					ende.countDown();
+				}
+			}.start();
+		}
+
+		for (int id = 0; id < PERSONEN; id++) {
+			kunden.einfuegen(new Kunde(id, "kunde" + id, "pw", "Kunde " + id, "Weg " + id, 28199, "Bremen"));
+			if (id % 2 == 1)
+				kunden.loeschen(kunden.sucheKunde(id - 1));
+		}
+		fertig.set(true);
+		ende.await();
+
+		int falschGefunden = 0;
+		for (int id = 0; id < PERSONEN; id++) {
+			try {
+				kunden.sucheKunde(id);
+				if (id % 2 == 0)
+					falschGefunden++;
+			} catch (KundeExistiertNichtException e) {
+				if (id % 2 == 1)
+					falschGefunden++;
+			}
+		}
+		pruefung.bedingung(falsch.get() == 0, "sucheKunde lieferte nie einen falschen Kunden (" + gefunden.get() + " gleichzeitige Suchen erfolgreich)");
+		pruefung.bedingung(falschGefunden == 0, "danach genau die nicht geloeschten Kunden gefunden");
+		pruefung.bedingung(kunden.getKundenListe().size() == PERSONEN / 2, "Kundenliste passt zum Index");
+	}
+
+	/**
+	 * Wie kundenPruefen() fuer die Mitarbeiter.
+	 */
+	private static void mitarbeiterPruefen() throws Exception {
+		final MitarbeiterVerwaltung mitarbeiter = new MitarbeiterVerwaltung(new UsernameIndex());
+		final AtomicBoolean fertig = new AtomicBoolean(false);
+		final AtomicLong falsch = new AtomicLong(0);
+		final AtomicLong gefunden = new AtomicLong(0);
+		final CountDownLatch ende = new CountDownLatch(SUCHENDE);
+
+		for (int t = 0; t < SUCHENDE; t++) {
+			new Thread() {
+				public void run() {
+					int id = 0;
+					while (!fertig.get()) {
+						id = (id + 7) % PERSONEN;
+						try {
+							if (mitarbeiter.sucheMitarbeiter(id).getId() != id)
+								falsch.incrementAndGet();
+							gefunden.incrementAndGet();
+						} catch (MitarbeiterExistiertNichtException e) {
+							// noch nicht eingefuegt oder schon geloescht
+						}
+					}
+					ende.countDown();
+				}
+			}.start();
+		}
+
+		for (int id = 0; id < PERSONEN; id++) {
+			mitarbeiter.einfuegen(new Mitarbeiter(id, "mitarbeiter" + id, "pw", "Mitarbeiter " + id, MitarbeiterFunktion.Mitarbeiter, 1000));
+			if (id % 2 == 1)
+				mitarbeiter.loeschen(mitarbeiter.sucheMitarbeiter(id - 1));
+		}
+		fertig.set(true);
+		ende.await();
+
+		int falschGefunden = 0;
+		for (int id = 0; id < PERSONEN; id++) {
+			try {
+				mitarbeiter.sucheMitarbeiter(id);
+				if (id % 2 == 0)
+					falschGefunden++;
+			} catch (MitarbeiterExistiertNichtException e) {
+				if (id % 2 == 1)
+					falschGefunden++;
+			}
+		}
+		pruefung.bedingung(falsch.get() == 0, "sucheMitarbeiter lieferte nie einen falschen Mitarbeiter (" + gefunden.get() + " gleichzeitige Suchen erfolgreich)");
+		pruefung.bedingung(falschGefunden == 0, "danach genau die nicht geloeschten Mitarbeiter gefunden");
+		pruefung.bedingung(mitarbeiter.getMitarbeiterListe().size() == PERSONEN / 2, "Mitarbeiterliste passt zum Index");
+	}
+
+}
@@ -0,0 +1,136 @@
+package shop.server.domain;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import shop.common.exceptions.ArtikelBestandIstKeineVielfacheDerPackungsgroesseException;
+import shop.common.exceptions.ArtikelBestandIstZuKleinException;
+import shop.common.exceptions.ArtikelExistiertNichtException;
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Kunde;
+import shop.common.valueobjects.WarenkorbArtikel;
+
+/**
+ * Benchmark fuer die Warenkorbverwaltung unter gleichzeitigen Kunden ohne
+ * Test-Framework (Start ueber main()). Der Benchmark gibt nur Messwerte aus
+ * und schlaegt nie fehl.
+ *
+ * Jeder Thread bedient einen eigenen Kunden und legt Artikel in den Warenkorb,
+ * aendert Stueckzahlen und nimmt Artikel wieder heraus. Jeder Kunde waehlt aus
+ * ARTIKEL_JE_KUNDE Artikeln, die sich mit denen der benachbarten Kunden
+ * ueberschneiden, so dass auch um dieselben Bestaende konkurriert wird.
+ * Gemessen wird der Durchsatz bei 1, 2, 4, ... KUNDEN Kunden,
+ * einmal mit der Sperre je Kunde und zum Vergleich mit einer zusaetzlichen
+ * gemeinsamen Sperre um jede Operation, wie sie vor der Sperre je Kunde
+ * bestand. Der Durchsatz kann nur mit so vielen Kernen steigen, wie die
+ * Maschine hat.
+ *
+ * Aufruf: java shop.server.domain.WarenkorbBenchmark [Kunden]
+ */
+public class WarenkorbBenchmark {
+
+	private static final int KUNDEN = 64;
+	private static final int ARTIKEL = 1000;
+	private static final int ARTIKEL_JE_KUNDE = 20;
+	// Operationen aller Kunden zusammen je Messung
+	private static final int OPERATIONEN = 1000000;
+	private static final int RUNDEN = 3;
+
+	public static void main(String[] args) throws Exception {
+		int kunden = args.length > 0 ? Integer.parseInt(args[0]) : KUNDEN;
+		System.out.println(Runtime.getRuntime().availableProcessors() + " Prozessoren");
+		System.out.println(String.format("%6s %22s %22s", "Kunden", "Sperre je Kunde", "gemeinsame Sperre"));
+		// Aufwaermen, damit der JIT-Compiler alle Messungen gleich behandelt
+		messen(kunden, false);
+		for (int n = 1; n <= kunden; n *= 2) {
+			double jeKunde = 0;
+			double gemeinsam = 0;
+			for (int runde = 0; runde < RUNDEN; runde++) {
+				jeKunde = Math.max(jeKunde, messen(n, false));
+				gemeinsam = Math.max(gemeinsam, messen(n, true));
+			}
+			System.out.println(String.format("%6d %16.0f Op/s %16.0f Op/s", n, jeKunde, gemeinsam));
+		}
+	}
+
+	/**
+	 * @param kunden Anzahl gleichzeitiger Kunden (je ein Thread)
+	 * @param gemeinsameSperre true, wenn jede Operation zusaetzlich unter einer
+	 *                         gemeinsamen Sperre ausgefuehrt wird
+	 * @return Operationen je Sekunde ueber alle Kunden
+	 */
+	private static double messen(int kunden, final boolean gemeinsameSperre) throws Exception {
+		final Lagerbestand lager = new Lagerbestand();
+		final WarenkorbVerwaltung warenkoerbe = new WarenkorbVerwaltung(lager);
+		final Artikel[] artikel = new Artikel[ARTIKEL];
+		for (int nr = 0; nr < ARTIKEL; nr++) {
+			artikel[nr] = new Artikel(nr, "Artikel " + nr, 1.0, Integer.MAX_VALUE / 2);
+			lager.aufnehmen(artikel[nr]);
+		}
+		final Object sperre = new Object();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch ende = new CountDownLatch(kunden);
+
+		final int operationen = OPERATIONEN / kunden;
+		for (int k = 0; k < kunden; k++) {
+			final Kunde kunde = new Kunde(k, "kunde" + k, "pw", "Kunde " + k, "Weg " + k, 28199, "Bremen");
+			final Random zufall = new Random(k);
+			// benachbarte Kunden teilen sich die Haelfte ihrer Artikel
+			final int erster = k * ARTIKEL_JE_KUNDE / 2;
+			new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < operationen; i++) {
+							Artikel a = artikel[(erster + zufall.nextInt(ARTIKEL_JE_KUNDE)) % ARTIKEL];
+							if (gemeinsameSperre) {
+								synchronized (sperre) {
+									operation(warenkoerbe, kunde, a, zufall);
+								}
+							} else {
+								operation(warenkoerbe, kunde, a, zufall);
+							}
+						}
+					} catch (InterruptedException e) {
+						return;
+					} finally {
+						ende.countDown();
+					}
+				}
+			}.start();
+		}
+		long beginn = System.nanoTime();
+		start.countDown();
+		ende.await();
+		long dauer = System.nanoTime() - beginn;
+		return (double) kunden * operationen * 1000000000L / dauer;
+	}
+
+	/**
+	 * Eine Operation eines Kunden: liegt der Artikel schon im Warenkorb, wird
+	 * seine Stueckzahl geaendert oder er wird herausgenommen, sonst wird er
+	 * hineingelegt. So bleibt der Warenkorb auf Dauer klein.
+	 */
+	private static void operation(WarenkorbVerwaltung warenkoerbe, Kunde kunde, Artikel artikel, Random zufall) {
+		try {
+			WarenkorbArtikel imWarenkorb;
+			try {
+				imWarenkorb = warenkoerbe.getWarenkorbArtikel(kunde, artikel);
+			} catch (ArtikelExistiertNichtException e) {
+				warenkoerbe.hinzufuegen(kunde, new WarenkorbArtikel(artikel, 1 + zufall.nextInt(3)));
+				return;
+			}
+			if (zufall.nextBoolean())
+				warenkoerbe.stueckzahlAendern(kunde, imWarenkorb, 1 + zufall.nextInt(3));
+			else
+				warenkoerbe.entfernen(kunde, imWarenkorb);
+		} catch (ArtikelExistiertNichtException e) {
+			throw new IllegalStateException(e);
+		} catch (ArtikelBestandIstZuKleinException e) {
+			throw new IllegalStateException(e);
+		} catch (ArtikelBestandIstKeineVielfacheDerPackungsgroesseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package shop.server.net;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import shop.common.valueobjects.Artikel;
+import shop.common.valueobjects.Kunde;
+import shop.common.valueobjects.Mitarbeiter;
+import shop.common.valueobjects.MitarbeiterFunktion;
+import shop.server.Pruefung;
+import shop.server.net.ShopServer.Betriebsart;
+
+/**
+ * Lasttest fuer die blockierenden Betriebsarten THREAD und VIRTUELL ohne
+ * Test-Framework (Start ueber main()).
+ *
+ * Fuer jede Betriebsart wird ein ShopServer gestartet und es werden SITZUNGEN
+ * Verbindungen gleichzeitig offen gehalten, die sich jeweils als Kunde anmelden.
+ * Danach sendet jede Sitzung eine Anfrage, bevor die erste Antwort gelesen wird,
+ * so dass alle Verbindungen gleichzeitig bedient werden muessen. Ausgegeben
+ * werden die Zeiten fuer den Aufbau der Sitzungen und eine Runde Anfragen, die
+ * Anzahl der Plattform-Threads und der belegte Heap.
+ *
+ * Die Shopverwaltung liest ihre Dateien aus "eShop Server/" im
+ * Arbeitsverzeichnis. Der Test legt dort eigene, kleine Dateien an und muss
+ * daher in einem leeren Verzeichnis gestartet werden. Jede Sitzung belegt auf
+ * Client- und Serverseite je einen Dateideskriptor (ulimit -n beachten).
+ *
+ * Aufruf: java shop.server.net.VerbindungenLasttest [Sitzungen]
+ */
+public class VerbindungenLasttest {
+
+	private static final int SITZUNGEN = 10000;
+	private static final File DATEN = new File("eShop Server");
+
+	public static void main(String[] args) throws Exception {
+		int sitzungen = args.length > 0 ? Integer.parseInt(args[0]) : SITZUNGEN;
+		if (DATEN.exists()) {
+			System.err.println("Das Verzeichnis \"" + DATEN.getAbsolutePath() + "\" existiert bereits; bitte in einem leeren Verzeichnis starten.");
+			System.exit(1);
+		}
+		Pruefung pruefung = new Pruefung("VerbindungenLasttest");
+		try {
+			datenAnlegen();
+			messen(pruefung, Betriebsart.THREAD, sitzungen);
+			try {
+				Thread.class.getMethod("startVirtualThread", Runnable.class);
+				messen(pruefung, Betriebsart.VIRTUELL, sitzungen);
+			} catch (NoSuchMethodException e) {
+				System.out.println(Betriebsart.VIRTUELL + ": wird von Java " + System.getProperty("java.version") + " nicht unterstuetzt (ab Java 21)");
+			}
+		} finally {
+			loeschen(DATEN);
+		}
+		pruefung.beenden();
+		// Die Threads des Pools wuerden die JVM sonst bis zu ihrem Ablauf am Leben halten
+		System.exit(0);
+	}
+
+	/**
+	 * Startet einen Server in der angegebenen Betriebsart und bedient damit
+	 * die Sitzungen. Geprueft wird, dass alle Sitzungen vollstaendig bedient
+	 * wurden.
+	 */
+	private static void messen(Pruefung pruefung, Betriebsart betriebsart, int sitzungen) throws Exception {
+		PrintStream bericht = System.out;
+		Socket[] verbindungen = new Socket[sitzungen];
+		BufferedReader[] eingaben = new BufferedReader[sitzungen];
+		PrintStream[] ausgaben = new PrintStream[sitzungen];
+		int bedient = 0;
+		long aufbau, runde;
+		int threads;
+		long heap;
+
+		// Der Server meldet jede Verbindung auf System.out
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			int port = freierPort();
+			final ShopServer server = new ShopServer(port, freierPort(), betriebsart, sitzungen, sitzungen, 0);
+			Thread annahme = new Thread("Annahme " + betriebsart) {
+				public void run() {
+					server.acceptClientConnectRequests();
+				}
+			};
+			annahme.setDaemon(true);
+			annahme.start();
+
+			// Sitzungen aufbauen: verbinden, Begrueszung lesen, als Kunde anmelden
+			long start = System.nanoTime();
+			for (int i = 0; i < sitzungen; i++) {
+				verbindungen[i] = new Socket("localhost", port);
+				eingaben[i] = new BufferedReader(new InputStreamReader(verbindungen[i].getInputStream()));
+				ausgaben[i] = new PrintStream(verbindungen[i].getOutputStream(), true);
+				eingaben[i].readLine();
+				ausgaben[i].print("pl\nkunde\npw\n");
+				ausgaben[i].flush();
+			}
+			for (int i = 0; i < sitzungen; i++) {
+				// Typ, ID, Name, Strasse, PLZ, Wohnort, blockiert
+				for (int z = 0; z < 7; z++)
+					eingaben[i].readLine();
+			}
+			aufbau = System.nanoTime() - start;
+
+			// Eine Runde Anfragen ueber alle offenen Sitzungen
+			start = System.nanoTime();
+			for (int i = 0; i < sitzungen; i++) {
+				ausgaben[i].print("gw\n1\n");
+				ausgaben[i].flush();
+			}
+			for (int i = 0; i < sitzungen; i++) {
+				if ("0".equals(eingaben[i].readLine()))
+					bedient++;
+			}
+			runde = System.nanoTime() - start;
+
+			threads = ManagementFactory.getThreadMXBean().getThreadCount();
+			System.gc();
+			heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+			for (int i = 0; i < sitzungen; i++) {
+				ausgaben[i].print("q\n");
+				ausgaben[i].flush();
+			}
+			for (int i = 0; i < sitzungen; i++) {
+				eingaben[i].readLine();
+				verbindungen[i].close();
+			}
+		} finally {
+			System.setOut(bericht);
+			for (Socket s : verbindungen) {
+				if (s != null)
+					s.close();
+			}
+		}
+
+		System.out.println(betriebsart + ":");
+		pruefung.bedingung(bedient == sitzungen, bedient + " von " + sitzungen + " Sitzungen bedient");
+		System.out.println("  Aufbau:   " + aufbau / 1000000 + " ms");
+		System.out.println("  Runde:    " + runde / 1000000 + " ms (" + runde / 1000 / sitzungen + " us je Anfrage)");
+		System.out.println("  Threads:  " + threads + " Plattform-Threads");
+		System.out.println("  Heap:     " + heap / (1024 * 1024) + " MB");
+	}
+
+	private static int freierPort() throws IOException {
+		ServerSocket s = new ServerSocket(0);
+		int port = s.getLocalPort();
+		s.close();
+		return port;
+	}
+
+	private static void datenAnlegen() throws IOException {
+		DATEN.mkdirs();
+		ObjectOutputStream o = new ObjectOutputStream(new FileOutputStream(new File(DATEN, "SHOP_A.ser")));
+		for (int i = 1; i <= 100; i++)
+			o.writeObject(new Artikel(i, "Artikel " + i, 1.0 * i, 100));
+		o.close();
+		o = new ObjectOutputStream(new FileOutputStream(new File(DATEN, "SHOP_M.ser")));
+		o.writeObject(new Mitarbeiter(1, "chef", "pw", "Chef", MitarbeiterFunktion.Admin, 1000));
+		o.close();
+		o = new ObjectOutputStream(new FileOutputStream(new File(DATEN, "SHOP_K.ser")));
+		o.writeObject(new Kunde(1, "kunde", "pw", "Kunde", "Weg 1", 28199, "Bremen"));
+		o.close();
+		new FileOutputStream(new File(DATEN, "EinAuslagerung.log")).close();
+	}
+
+	private static void loeschen(File datei) {
+		File[] inhalt = datei.listFiles();
+		if (inhalt != null) {
+			for (File f : inhalt)
+				loeschen(f);
+		}
+		datei.delete();
+	}
+
+}